@@ -0,0 +1,103 @@
+package org.kohsuke.jnt;
+
+import org.kohsuke.jnt.fixture.FixtureServer;
+import org.kohsuke.jnt.fixture.FixtureStore;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+
+/**
+ * Pages the benchmarks run on, served by {@link FixtureServer}.
+ *
+ * <p>
+ * By default, synthetic pages of the size given by {@link #size} are used. When the system property
+ * <tt>jnt.fixtures</tt> points to a directory recorded by {@link JavaNet#setRecorder(FixtureStore)},
+ * those pages are replayed instead, for the project given by <tt>jnt.project</tt>.
+ */
+@State(Scope.Benchmark)
+public class Fixtures {
+    /**
+     * Number of members, files, issues, and query result rows in the synthetic pages.
+     */
+    @Param({"100","1000"})
+    public int size;
+
+    FixtureServer server;
+    JavaNet session;
+    JNProject project;
+
+    byte[] memberList;
+    byte[] issueXml;
+
+    @Setup
+    public void setUp() throws Exception {
+        String dir = System.getProperty("jnt.fixtures");
+        if(dir!=null) {
+            server = new FixtureServer(new FixtureStore(new File(dir)));
+        } else {
+            server = new FixtureServer();
+            server.addMemberList(PROJECT,size);
+            server.addDocumentList(PROJECT,size);
+            server.addIssues(PROJECT,size);
+            server.addAdHocQuery(size,5);
+        }
+        server.start();
+
+        session = server.connect();
+        project = session.getProject(PROJECT);
+
+        memberList = get(project._getURL()+"/servlets/ProjectMemberList");
+        StringBuilder ids = new StringBuilder();
+        for( int i=1; i<=Math.min(size,JNIssueTracker.BULK_SIZE); i++ ) {
+            if(ids.length()>0)  ids.append(',');
+            ids.append(i);
+        }
+        issueXml = get(project._getURL()+"/issues/"+JNIssue.XML_CGI+"?include_empty_issues=false&include_attachments=false&id="+ids);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.stop();
+    }
+
+    /**
+     * Creates a new session, so that nothing is cached yet.
+     */
+    JNProject newProject() throws ProcessingException {
+        return server.connect().getProject(PROJECT);
+    }
+
+    /**
+     * Fetches the raw bytes of the page.
+     */
+    private byte[] get(String url) throws IOException {
+        Proxy proxy = new Proxy(Proxy.Type.HTTP,new InetSocketAddress("127.0.0.1",server.getPort()));
+        HttpURLConnection con = (HttpURLConnection)new URL(session.rewrite(url)).openConnection(proxy);
+        if(con.getResponseCode()!=200)
+            throw new IOException("No fixture for "+url+": "+con.getResponseCode());
+        InputStream in = con.getInputStream();
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            int len;
+            while((len=in.read(b))>=0)
+                buf.write(b,0,len);
+            return buf.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    static final String PROJECT = System.getProperty("jnt.project","synthetic");
+}
@@ -0,0 +1,94 @@
+package org.kohsuke.jnt;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+import java.io.ByteArrayInputStream;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and object construction, without any I/O.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend="-Dorg.kohsuke.jnt.RequestGovernor.rate=0")
+public class ParseBenchmark {
+    @State(Scope.Benchmark)
+    public static class Parsed {
+        Document memberList;
+        Document issueXml;
+        Element issue;
+
+        @Setup
+        public void setUp(Fixtures f) throws Exception {
+            memberList = Util.getDom4j(new InputSource(new ByteArrayInputStream(f.memberList)));
+            issueXml = new SAXReader().read(new ByteArrayInputStream(f.issueXml));
+            issue = issueXml.getRootElement().element("issue");
+        }
+    }
+
+    /**
+     * Fresh project for every invocation, so that {@link JNIssue#bulkCreate(JNProject, Document)}
+     * doesn't just find the issues in the cache.
+     */
+    @State(Scope.Thread)
+    public static class FreshProject {
+        JNProject project;
+
+        @Setup(Level.Invocation)
+        public void setUp(Fixtures f) throws ProcessingException {
+            project = f.newProject();
+        }
+    }
+
+    @Benchmark
+    public Document getDom4j(Fixtures f) throws Exception {
+        return Util.getDom4j(new InputSource(new ByteArrayInputStream(f.memberList)));
+    }
+
+    @Benchmark
+    public Document checkError(Fixtures f, Parsed p) throws ProcessingException {
+        return f.session.checkError(p.memberList);
+    }
+
+    @Benchmark
+    public Map<Integer,JNIssue> bulkCreate(Parsed p, FreshProject fp) throws ProcessingException {
+        return JNIssue.bulkCreate(fp.project,p.issueXml);
+    }
+
+    @Benchmark
+    public Calendar getCreationDate(Fixtures f, Parsed p) throws ProcessingException {
+        return new JNIssue(f.project,1,p.issue).getCreationDate();
+    }
+
+    @Benchmark
+    public Calendar getLastModified(Fixtures f, Parsed p) throws ProcessingException {
+        return new JNIssue(f.project,1,p.issue).getLastModified();
+    }
+
+    /**
+     * {@link JNIssue#getDescriptions()} is computed once per issue, so this includes creating the issue.
+     */
+    @Benchmark
+    public List<JNIssue.Description> getDescriptions(Fixtures f, Parsed p) throws ProcessingException {
+        return new JNIssue(f.project,1,p.issue).getDescriptions();
+    }
+}
@@ -0,0 +1,44 @@
+package org.kohsuke.jnt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrapers end to end, fetching pages from {@link Fixtures} over the loopback interface.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(value=1, jvmArgsAppend="-Dorg.kohsuke.jnt.RequestGovernor.rate=0")
+public class ScrapeBenchmark {
+    /**
+     * {@link JNMembership#parseMembershipInfo()}, through a membership that hasn't parsed anything yet.
+     */
+    @Benchmark
+    public Set<JNUser> parseMembershipInfo(Fixtures f) throws ProcessingException {
+        return new JNMembership(f.project).getMembers();
+    }
+
+    /**
+     * {@link JNFileFolder#parse()}, through a folder that hasn't parsed anything yet.
+     */
+    @Benchmark
+    public Map<String,JNFile> parseFileFolder(Fixtures f) throws ProcessingException {
+        return new JNFileFolder(f.project,null,Fixtures.PROJECT,0).getFiles();
+    }
+
+    @Benchmark
+    public String[][] runAdHocQuery(Fixtures f) throws ProcessingException {
+        return f.session.runAdHocQuery("select * from synthetic");
+    }
+}
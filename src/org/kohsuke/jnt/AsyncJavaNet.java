@@ -0,0 +1,138 @@
+package org.kohsuke.jnt;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Non-blocking facade over the object model.
+ *
+ * <p>
+ * Methods on {@link JavaNet} and the objects obtained from it block the calling thread
+ * until java.net responds. The methods of this class instead return a {@link Future}
+ * immediately, and run the work in the background with a session borrowed from
+ * a {@link JavaNetPool}. Since a session is only lent to one task at a time,
+ * the operations on each session are serialized, while the pool as a whole
+ * talks to java.net in parallel. So a caller can queue up thousands of lookups
+ * without dedicating one thread to each of them:
+ *
+ * <pre>
+ * AsyncJavaNet async = new AsyncJavaNet(JavaNetPool.connect(8));
+ * List&lt;Future&lt;JNIssue>> issues = new ArrayList&lt;Future&lt;JNIssue>>();
+ * for (int id : ids)
+ *     issues.add(async.getIssue("glassfish",id));
+ * for (Future&lt;JNIssue> f : issues)
+ *     System.out.println(f.get().getShortDescription());
+ * </pre>
+ *
+ * <p>
+ * A {@link ProcessingException} thrown by the work surfaces as the cause of the
+ * {@link java.util.concurrent.ExecutionException} from {@link Future#get()}.
+ *
+ * <p>
+ * Objects returned through the futures still belong to the session that produced them.
+ * The data they've already loaded can be read from any thread, but an operation that
+ * needs to talk to java.net again should be submitted as another task via {@link #submit(JavaNetPool.Task)}.
+ */
+public class AsyncJavaNet {
+    private final JavaNetPool pool;
+    private final ExecutorService executor;
+
+    /**
+     * @param executor
+     *      Runs the tasks. Tasks wait for a session to become available, so there's
+     *      little point in giving this executor more threads than the size of the pool.
+     */
+    public AsyncJavaNet(JavaNetPool pool, ExecutorService executor) {
+        this.pool = pool;
+        this.executor = executor;
+    }
+
+    /**
+     * Runs tasks with one daemon thread per session in the pool.
+     */
+    public AsyncJavaNet(JavaNetPool pool) {
+        this(pool,Executors.newFixedThreadPool(pool.size(),new ThreadFactory() {
+            private int n;
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r,"AsyncJavaNet worker #"+(++n));
+                t.setDaemon(true);
+                return t;
+            }
+        }));
+    }
+
+    public JavaNetPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Runs an arbitrary task with a session from the pool.
+     */
+    public <T> Future<T> submit(final JavaNetPool.Task<T> task) {
+        return executor.submit(new Callable<T>() {
+            public T call() throws ProcessingException {
+                return pool.run(task);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link JNIssueTracker#get(int)}.
+     */
+    public Future<JNIssue> getIssue(final String projectName, final int id) {
+        return submit(new JavaNetPool.Task<JNIssue>() {
+            public JNIssue run(JavaNet session) throws ProcessingException {
+                return session.getProject(projectName).getIssueTracker().get(id);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link JNIssueTracker#get(int...)}.
+     */
+    public Future<Map<Integer,JNIssue>> getIssues(final String projectName, final int... ids) {
+        return submit(new JavaNetPool.Task<Map<Integer,JNIssue>>() {
+            public Map<Integer,JNIssue> run(JavaNet session) throws ProcessingException {
+                return session.getProject(projectName).getIssueTracker().get(ids);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link JNProject#getSubProjects()}.
+     */
+    public Future<Set<JNProject>> getSubProjects(final String projectName) {
+        return submit(new JavaNetPool.Task<Set<JNProject>>() {
+            public Set<JNProject> run(JavaNet session) throws ProcessingException {
+                return session.getProject(projectName).getSubProjects();
+            }
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link JNMailingList#getSubscribers(SubscriptionMode)}.
+     */
+    public Future<List<String>> getSubscribers(final String projectName, final String listName, final SubscriptionMode mode) {
+        return submit(new JavaNetPool.Task<List<String>>() {
+            public List<String> run(JavaNet session) throws ProcessingException {
+                JNMailingList list = session.getProject(projectName).getMailingLists().get(listName);
+                if(list==null)
+                    throw new ProcessingException("No such mailing list "+listName+" in "+projectName);
+                return list.getSubscribers(mode);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting new tasks. Tasks that are already submitted still run to completion.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,106 @@
+package org.kohsuke.jnt;
+
+/**
+ * Decides how many issues to ask xml.cgi for in one request.
+ *
+ * <p>
+ * The right size depends on the tracker. Issues with long comment threads make a request of
+ * 100 issues slow enough for the server to give up, while a tracker of short issues could
+ * take many more per request. So this class keeps a moving average of the bytes and the time that
+ * one issue ID costs, and sizes the next batch so that the response stays within {@link #TARGET_BYTES}
+ * and {@link #TARGET_NANOS}. The size changes by at most a factor of 2 at a time.
+ *
+ * <p>
+ * When a batch fails, the size drops to half of it, and the size of the failed batch is remembered.
+ * The size then only creeps up towards it, a little at a time, and the memory is cleared once
+ * a batch that large succeeds.
+ *
+ * <p>
+ * The time is measured by the caller, so it includes the time spent waiting for {@link RequestGovernor}.
+ */
+final class BatchSizer {
+    private int size;
+
+    /**
+     * Moving averages per requested issue ID. Negative until the first observation.
+     */
+    private double bytesPerId = -1, nanosPerId = -1;
+
+    /**
+     * Size of the smallest batch that failed, until a batch of that size succeeds.
+     */
+    private int ceiling = Integer.MAX_VALUE;
+
+    BatchSizer(int initialSize) {
+        this.size = initialSize;
+    }
+
+    /**
+     * Number of IDs to put in the next request.
+     */
+    synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Records a successful request.
+     *
+     * @param ids
+     *      the number of IDs requested.
+     * @param issues
+     *      the number of issues in the response.
+     * @param bytes
+     *      the size of the response.
+     * @param nanos
+     *      the time it took.
+     */
+    synchronized void succeeded(int ids, int issues, long bytes, long nanos) {
+        if(ids>=ceiling)
+            ceiling = Integer.MAX_VALUE;    // whatever made it fail is gone
+        if(issues==0)
+            return; // a window in a gap of the IDs says nothing about how big the issues are
+
+        bytesPerId = average(bytesPerId,(double)bytes/ids);
+        nanosPerId = average(nanosPerId,(double)nanos/ids);
+
+        double ideal = Math.min(TARGET_BYTES/Math.max(bytesPerId,1), TARGET_NANOS/Math.max(nanosPerId,1));
+        int next = clamp((int)Math.min(ideal,Integer.MAX_VALUE), size/2, size*2);
+        if(next>=ceiling)
+            next = Math.max(size,Math.min(next,size+Math.max(1,size/8)));
+        size = clamp(next,MIN_SIZE,MAX_SIZE);
+    }
+
+    /**
+     * Records a request that failed, possibly because it was too large.
+     */
+    synchronized void failed(int ids) {
+        // concurrent batches that fail together only count once
+        ceiling = Math.min(ceiling,ids);
+        size = Math.max(MIN_SIZE,Math.min(size,ids/2));
+    }
+
+    private static double average(double avg, double x) {
+        return avg<0 ? x : avg+(x-avg)*WEIGHT;
+    }
+
+    private static int clamp(int x, int lo, int hi) {
+        return Math.max(MIN_SIZE,Math.min(MAX_SIZE,Math.max(lo,Math.min(hi,x))));
+    }
+
+    /**
+     * How much the latest observation counts in the moving averages.
+     */
+    private static final double WEIGHT = 0.3;
+
+    static final int MIN_SIZE = 1;
+    static final int MAX_SIZE = 1000;
+
+    /**
+     * Response size that a batch aims at.
+     */
+    static final double TARGET_BYTES = 2*1024*1024;
+    /**
+     * Response time that a batch aims at.
+     */
+    static final double TARGET_NANOS = 10*1000*1000*1000L;
+}
@@ -0,0 +1,240 @@
+package org.kohsuke.jnt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+/**
+ * Lazily scraped state of the object model, like the files in a folder or the members of a project.
+ *
+ * <p>
+ * While {@link #load()} runs, the URLs it fetches through {@link JNObject} are recorded
+ * as the pages the value came from, together with those of other {@link Cached}s it uses.
+ * The value is kept until one of the following happens, and then it's loaded again on the next {@link #get()}:
+ * <ul>
+ * <li>{@link JavaNet#invalidateCache(String)} is called for one of those pages. This happens automatically
+ *     when a form is posted to one of them, and the code that changes them otherwise calls it explicitly.
+ * <li>The value is {@link #invalidate() invalidated} directly.
+ * <li>The value becomes older than {@link JavaNet#getCacheTTL()}.
+ * </ul>
+ *
+ * <p>
+ * No lock is held while loading. Two threads asking for a missing value at the same time
+ * may both load it, although the pages themselves are fetched only once by {@link PageFetcher}.
+ */
+abstract class Cached<T> {
+    private final JavaNet root;
+
+    private volatile Entry<T> entry;
+
+    /**
+     * Incremented on every invalidation, so that a load that was already running
+     * doesn't store a value scraped from the pages before the change. Guarded by <tt>this</tt>.
+     */
+    private int generation;
+
+    private static final class Entry<T> {
+        private final T value;
+        private final long loadedAt = System.nanoTime();
+        private final Set<String> dependencies;
+
+        Entry(T value, Set<String> dependencies) {
+            this.value = value;
+            this.dependencies = dependencies;
+        }
+
+        boolean isExpired(long ttl) {
+            return ttl>0 && System.nanoTime()-loadedAt > ttl*1000000L;
+        }
+    }
+
+    /**
+     * Pages fetched by the {@link #load()} currently running on a thread.
+     */
+    private static final class Frame {
+        private final Set<String> urls = new HashSet<String>();
+    }
+
+    private static final ThreadLocal<Frame> CURRENT = new ThreadLocal<Frame>();
+
+    Cached(JavaNet root) {
+        this.root = root;
+    }
+
+    /**
+     * Scrapes the value. Called whenever there's no valid value.
+     *
+     * @return
+     *      shared among threads, so it must not be modified afterward.
+     */
+    protected abstract T load() throws ProcessingException;
+
+    /**
+     * Gets the value, loading it if necessary.
+     */
+    final T get() throws ProcessingException {
+        Entry<T> e = entry;
+        if(e==null || e.isExpired(root.getCacheTTL())) {
+            int gen;
+            synchronized(this) {
+                gen = generation;
+            }
+
+            Frame outer = CURRENT.get();
+            Frame frame = new Frame();
+            CURRENT.set(frame);
+            T value;
+            try {
+                value = load();
+            } finally {
+                CURRENT.set(outer);
+            }
+
+            e = new Entry<T>(value,Collections.unmodifiableSet(frame.urls));
+            root.caches.register(this,e.dependencies);
+            synchronized(this) {
+                if(gen==generation)
+                    entry = e;
+            }
+        }
+
+        // the value that uses this value depends on the same pages
+        Frame outer = CURRENT.get();
+        if(outer!=null)
+            outer.urls.addAll(e.dependencies);
+        return e.value;
+    }
+
+    /**
+     * Gets the value only if it's already loaded and still valid.
+     *
+     * @return
+     *      null otherwise.
+     */
+    final T peek() {
+        Entry<T> e = entry;
+        if(e==null || e.isExpired(root.getCacheTTL()))
+            return null;
+        return e.value;
+    }
+
+    /**
+     * Discards the value, so that it will be loaded again.
+     */
+    final synchronized void invalidate() {
+        generation++;
+        entry = null;
+    }
+
+    /**
+     * Records that the value being loaded on this thread, if any, came from the given page.
+     */
+    static void dependsOn(String url) {
+        Frame f = CURRENT.get();
+        if(f!=null)
+            f.urls.add(normalize(url));
+    }
+
+    /**
+     * Makes URLs comparable regardless of whether they are talking to {@link org.kohsuke.jnt.fixture.FixtureServer}.
+     */
+    private static String normalize(String url) {
+        int idx = url.indexOf('#');
+        if(idx>=0)
+            url = url.substring(0,idx);
+        if(url.startsWith("http://"))
+            url = "https://"+url.substring("http://".length());
+        return url;
+    }
+
+    /**
+     * {@link Cached}s of a session by the pages they depend on.
+     *
+     * <p>
+     * Values are only weakly referenced, so they go away together with the objects that hold them.
+     */
+    static final class Registry {
+        private final TreeMap<String,Map<Cached<?>,Boolean>> byUrl = new TreeMap<String,Map<Cached<?>,Boolean>>();
+
+        /**
+         * Number of pages registered since the last {@link #purge()}, and the number of pages left after it.
+         */
+        private int registered, purged;
+
+        synchronized void register(Cached<?> c, Set<String> urls) {
+            for (String url : urls) {
+                Map<Cached<?>,Boolean> m = byUrl.get(url);
+                if(m==null)
+                    byUrl.put(url,m=new WeakHashMap<Cached<?>,Boolean>());
+                m.put(c,Boolean.TRUE);
+            }
+            // once for as many registrations as there were pages left, so that it costs O(1) per registration
+            registered += urls.size();
+            if(registered>purged)
+                purge();
+        }
+
+        /**
+         * Drops the pages whose values have all been garbage collected.
+         * Otherwise every page ever loaded would stay here, unless it's invalidated.
+         */
+        private void purge() {
+            Iterator<Map<Cached<?>,Boolean>> itr = byUrl.values().iterator();
+            while(itr.hasNext())
+                if(itr.next().isEmpty())
+                    itr.remove();
+            registered = 0;
+            purged = byUrl.size();
+        }
+
+        /**
+         * Number of pages that values depend on.
+         */
+        synchronized int size() {
+            return byUrl.size();
+        }
+
+        /**
+         * Invalidates all the values that depend on the given page, or the same page with any query parameters.
+         * Those values register themselves again when they are loaded.
+         */
+        void invalidate(String url) {
+            url = normalize(url);
+            List<Cached<?>> hits = new ArrayList<Cached<?>>();
+            synchronized(this) {
+                Iterator<Map.Entry<String,Map<Cached<?>,Boolean>>> itr
+                    = byUrl.subMap(url,url+Character.MAX_VALUE).entrySet().iterator();
+                while(itr.hasNext()) {
+                    Map.Entry<String,Map<Cached<?>,Boolean>> e = itr.next();
+                    String key = e.getKey();
+                    if(key.length()>url.length() && "?&".indexOf(key.charAt(url.length()))<0)
+                        continue;   // a different page whose URL happens to start with the same string
+                    hits.addAll(e.getValue().keySet());
+                    itr.remove();
+                }
+            }
+            invalidate(hits);
+        }
+
+        void invalidateAll() {
+            List<Cached<?>> hits = new ArrayList<Cached<?>>();
+            synchronized(this) {
+                for (Map<Cached<?>,Boolean> m : byUrl.values())
+                    hits.addAll(m.keySet());
+                byUrl.clear();
+            }
+            invalidate(hits);
+        }
+
+        private static void invalidate(List<Cached<?>> hits) {
+            for (Cached<?> c : hits)
+                c.invalidate();
+        }
+    }
+}
@@ -25,6 +25,17 @@ public class ConnectionInfo {
      */
     public int proxyPort;
 
+    /**
+     * If non-null, pages fetched for scraping are cached in this directory.
+     *
+     * @see PageCache
+     */
+    public File cacheDir;
+    /**
+     * If {@link #cacheDir} is non-null, the maximum size of the cache in bytes.
+     */
+    public long cacheSize = 64*1024*1024;
+
     public ConnectionInfo(String userName, String password) {
         this.userName = userName;
         this.password = password;
@@ -54,6 +65,12 @@ public class ConnectionInfo {
             proxyPort = Integer.parseInt(accountInfo.getProperty("proxyPort"));
         }
 
+        if(accountInfo.containsKey("cacheDir")) {
+            cacheDir = new File(accountInfo.getProperty("cacheDir"));
+            if(accountInfo.containsKey("cacheSize"))
+                cacheSize = Long.parseLong(accountInfo.getProperty("cacheSize"));
+        }
+
         userName = accountInfo.getProperty("userName");
         if(userName==null)
             throw new ProcessingException("userName property is missing");
@@ -62,6 +79,17 @@ public class ConnectionInfo {
             throw new ProcessingException("password property is missing");
     }
 
+    /**
+     * Creates the {@link PageCache} as configured.
+     *
+     * @return
+     *      null if no cache is configured.
+     */
+    public PageCache createPageCache() {
+        if(cacheDir==null)  return null;
+        return new PageCache(cacheDir,cacheSize);
+    }
+
     /**
      * Gets the default ".java.net" config property file.
      */
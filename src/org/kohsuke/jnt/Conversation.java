@@ -0,0 +1,102 @@
+package org.kohsuke.jnt;
+
+import com.meterware.httpunit.FrameSelector;
+import com.meterware.httpunit.GetMethodWebRequest;
+import com.meterware.httpunit.WebConversation;
+import com.meterware.httpunit.WebRequest;
+import com.meterware.httpunit.WebResponse;
+import org.kohsuke.jnt.fixture.FixtureStore;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link WebConversation} used by {@link JavaNet}.
+ *
+ * <p>
+ * Every request httpunit makes, whether it's {@link JNObject#goTo(String)},
+ * a form submission, or a link click, goes through {@link #newResponse(WebRequest, FrameSelector)},
+ * so this is where we hook into the request path, for {@link RequestGovernor},
+ * {@link Metrics}, {@link FixtureStore recording}, and invalidating {@link Cached} state.
+ */
+class Conversation extends WebConversation {
+    private final JavaNet root;
+
+    Conversation(JavaNet root) {
+        this.root = root;
+    }
+
+    protected WebResponse newResponse(WebRequest request, FrameSelector targetFrame) throws MalformedURLException, IOException {
+        String url = request.getURL().toExternalForm();
+        String rewritten = root.rewrite(url);
+        if(!rewritten.equals(url) && request.getMethod().equals("GET"))
+            // forms on the pages served by FixtureServer already point to it,
+            // so only the URLs we hard-code need to be rewritten.
+            request = new GetMethodWebRequest(rewritten);
+
+        Metrics.Recorder recorder = Metrics.forRequest(url);
+        RequestGovernor governor = RequestGovernor.of(request.getURL().getHost(),root.isPaced());
+
+        long start = governor!=null ? governor.begin(RequestPriority.current()) : System.nanoTime();
+        int code = -1;
+        try {
+            WebResponse r = super.newResponse(request,targetFrame);
+            code = r.getResponseCode();
+            int length = getContentLength(r);
+            if(length>=0)
+                // httpunit only keeps the decoded text, so without the header, we'd have to encode it again to count
+                recorder.addBytes(length);
+            record(request,r);
+            return r;
+        } finally {
+            if(governor!=null)
+                governor.end(url,start,code<0 || RequestGovernor.isFailure(code));
+            recorder.record(start,code<0 || code>=400);
+            if(!request.getMethod().equals("GET"))
+                // java.net forms mostly post back to the page that shows what they change
+                root.invalidateCache(stripQuery(request.getURL().toExternalForm()));
+        }
+    }
+
+    /**
+     * Gets the size of the body from the Content-Length header.
+     *
+     * @return
+     *      -1 if the server didn't tell us, or if it's the size before decompression.
+     */
+    private static int getContentLength(WebResponse r) {
+        if(r.getHeaderField("Content-Encoding")!=null)
+            return -1;
+        try {
+            return r.getContentLength();
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String stripQuery(String url) {
+        int idx = url.indexOf('?');
+        return idx<0 ? url : url.substring(0,idx);
+    }
+
+    private void record(WebRequest request, WebResponse r) throws IOException {
+        FixtureStore store = root.getRecorder();
+        if(store==null)     return;
+
+        Map<String,String> headers = new HashMap<String,String>();
+        for (String name : RECORDED_HEADERS) {
+            String v = r.getHeaderField(name);
+            if(v!=null)
+                headers.put(name,v);
+        }
+        store.record(request.getMethod(),request.getURL().toExternalForm(),new FixtureStore.Exchange(
+            r.getResponseCode(),r.getContentType(),headers,r.getText().getBytes(r.getCharacterSet())));
+    }
+
+    /**
+     * Headers other than the content type that are needed to replay the response.
+     */
+    /*package*/ static final String[] RECORDED_HEADERS = {"Location","Set-Cookie"};
+}
@@ -0,0 +1,194 @@
+package org.kohsuke.jnt;
+
+import org.cyberneko.html.parsers.SAXParser;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming, event-driven scraper of HTML pages.
+ *
+ * <p>
+ * {@link Util#getDom4j(com.meterware.httpunit.WebResponse)} builds a tree of the whole page
+ * even when all we need is a few rows of one table. This class instead runs a set of
+ * selectors over the SAX events from NekoHTML, and only builds the subtrees of
+ * the elements that match them. Each such subtree is handed to the {@link Handler}
+ * as soon as its end tag is seen, then discarded.
+ *
+ * <p>
+ * Since the elements are matched while the page is being parsed, only
+ * {@link Selector#matches(List) a small subset} of XPath can be used as selectors,
+ * such as <tt>//DIV[@id='adhocqueryresults']//TR</tt>. Element names are in
+ * the upper case, just like what NekoHTML produces.
+ *
+ * <p>
+ * The element given to the handler keeps its ancestors as attribute-only "shells",
+ * so for example {@code tr.getParent()} identifies the table that the row belongs to.
+ * When a selector matches inside an element that's already being captured, the inner
+ * element is delivered on its own, and it also stays in the outer one.
+ */
+final class HtmlExtractor {
+    /**
+     * Receives the elements that matched a selector.
+     */
+    interface Handler {
+        void onMatch(Element e) throws ProcessingException, IOException, ParseException;
+    }
+
+    private final List<Selector> selectors = new ArrayList<Selector>();
+    private final List<Handler> handlers = new ArrayList<Handler>();
+
+    HtmlExtractor() {
+    }
+
+    /**
+     * Creates an extractor with the same selectors as the given one, so that more can be added
+     * without changing it.
+     */
+    HtmlExtractor(HtmlExtractor base) {
+        selectors.addAll(base.selectors);
+        handlers.addAll(base.handlers);
+    }
+
+    /**
+     * Registers a selector.
+     *
+     * @return this
+     * @throws IllegalArgumentException
+     *      if the selector is outside what {@link Selector#matches(List)} supports.
+     */
+    HtmlExtractor add(Selector selector, Handler handler) {
+        selector.checkStreamable();
+        selectors.add(selector);
+        handlers.add(handler);
+        return this;
+    }
+
+    /**
+     * Parses the HTML and invokes handlers for matches.
+     */
+    void parse(InputSource source) throws IOException, SAXException, ProcessingException, ParseException {
+        SAXParser parser = Util.acquireHtmlParser();
+        parser.setContentHandler(new Driver());
+        try {
+            parser.parse(source);
+        } catch (SAXException e) {
+            if(e.getException() instanceof HandlerException) {
+                Exception x = ((HandlerException)e.getException()).cause;
+                if(x instanceof ProcessingException)    throw (ProcessingException)x;
+                if(x instanceof IOException)            throw (IOException)x;
+                if(x instanceof ParseException)         throw (ParseException)x;
+                throw (RuntimeException)x;
+            }
+            throw e;
+        } finally {
+            Util.releaseHtmlParser(parser);
+        }
+    }
+
+    /**
+     * Carries an exception thrown by a {@link Handler} through the parser.
+     */
+    private static final class HandlerException extends Exception {
+        final Exception cause;
+
+        HandlerException(Exception cause) {
+            super(cause);
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * Mirrors the open elements and captures the matched subtrees.
+     */
+    private final class Driver extends DefaultHandler {
+        /**
+         * Currently open elements, from the root.
+         */
+        private final List<Element> stack = new ArrayList<Element>();
+        /**
+         * For each open element, the index of the handler if it's a capture root, or else -1.
+         */
+        private final List<Integer> roots = new ArrayList<Integer>();
+        /**
+         * Number of open capture roots.
+         */
+        private int captureDepth;
+
+        private final StringBuilder text = new StringBuilder();
+
+        public void startElement(String uri, String localName, String qName, Attributes atts) {
+            flushText();
+
+            String name = qName.length()>0 ? qName : localName;
+            Element e = DocumentHelper.createElement(name);
+            for( int i=0; i<atts.getLength(); i++ ) {
+                String an = atts.getQName(i);
+                if(an.length()==0)  an = atts.getLocalName(i);
+                e.addAttribute(an,atts.getValue(i));
+            }
+
+            if(!stack.isEmpty())
+                stack.get(stack.size()-1).add(e);
+            stack.add(e);
+
+            int root = -1;
+            for( int i=0; i<selectors.size(); i++ ) {
+                if(selectors.get(i).matches(stack)) {
+                    root = i;
+                    break;
+                }
+            }
+            roots.add(root);
+            if(root>=0)
+                captureDepth++;
+        }
+
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            flushText();
+
+            int last = stack.size()-1;
+            Element e = stack.remove(last);
+            int root = roots.remove(last);
+
+            if(root>=0) {
+                captureDepth--;
+                try {
+                    handlers.get(root).onMatch(e);
+                } catch (ProcessingException x) {
+                    throw new SAXException(new HandlerException(x));
+                } catch (IOException x) {
+                    throw new SAXException(new HandlerException(x));
+                } catch (ParseException x) {
+                    throw new SAXException(new HandlerException(x));
+                } catch (RuntimeException x) {
+                    throw new SAXException(new HandlerException(x));
+                }
+            }
+
+            // keep the element only if it's a part of the subtree being captured
+            if(captureDepth==0 && e.getParent()!=null)
+                e.getParent().remove(e);
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            if(captureDepth>0)
+                text.append(ch,start,length);
+        }
+
+        private void flushText() {
+            if(text.length()>0) {
+                stack.get(stack.size()-1).addText(text.toString());
+                text.setLength(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.kohsuke.jnt;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe map from names to the canonical objects, like {@link JNUser}s.
+ *
+ * <p>
+ * Lookups don't take any lock. Objects are always referenced weakly, so one that the application
+ * still uses is never replaced by another instance. On top of that, the objects are held strongly
+ * so that their scraped data survive, either all of them (the default) or only the most recently
+ * created ones, up to {@link #setLimit(int) a limit}.
+ *
+ * <p>
+ * Like the {@link java.util.HashMap}s that this replaced, null is a valid name.
+ */
+final class Interner<V> {
+    private final ConcurrentHashMap<String,Ref<V>> map = new ConcurrentHashMap<String,Ref<V>>();
+    private final ReferenceQueue<V> queue = new ReferenceQueue<V>();
+
+    /**
+     * Entries held strongly when the limit is set, older ones first.
+     */
+    private final ConcurrentLinkedQueue<Ref<V>> recent = new ConcurrentLinkedQueue<Ref<V>>();
+    private final AtomicInteger recentSize = new AtomicInteger();
+
+    private volatile int limit = -1;
+
+    private static final class Ref<V> extends WeakReference<V> {
+        private final String key;
+        /**
+         * Keeps the object reachable, if non-null.
+         */
+        private volatile V strong;
+
+        Ref(String key, V value, ReferenceQueue<V> queue) {
+            super(value,queue);
+            this.key = key;
+            this.strong = value;
+        }
+    }
+
+    /**
+     * @return
+     *      null if there's no object for the given name.
+     */
+    V get(String key) {
+        Ref<V> r = map.get(mask(key));
+        return r!=null ? r.get() : null;
+    }
+
+    /**
+     * Registers the object unless another one is already there for the same name.
+     *
+     * @return
+     *      the object that won, which is the one that the caller should use.
+     */
+    V intern(String key, V value) {
+        key = mask(key);
+        purge();
+        Ref<V> ref = new Ref<V>(key,value,queue);
+        while(true) {
+            Ref<V> old = map.putIfAbsent(key,ref);
+            if(old==null)
+                break;
+            V v = old.get();
+            if(v!=null)
+                return v;
+            if(map.replace(key,old,ref))
+                break;
+        }
+        retain(ref);
+        return value;
+    }
+
+    /**
+     * Registers the object, replacing the existing one, if any.
+     */
+    void put(String key, V value) {
+        key = mask(key);
+        purge();
+        Ref<V> ref = new Ref<V>(key,value,queue);
+        map.put(key,ref);
+        retain(ref);
+    }
+
+    /**
+     * Sets how many objects are held strongly.
+     *
+     * @param limit
+     *      -1 to hold everything strongly. 0 to hold everything only weakly.
+     *      When this changes, all the existing objects are only held weakly,
+     *      except when changed to -1.
+     */
+    void setLimit(int limit) {
+        this.limit = limit;
+        recent.clear();
+        recentSize.set(0);
+        for (Ref<V> r : map.values())
+            r.strong = limit<0 ? r.get() : null;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    private void retain(Ref<V> ref) {
+        int limit = this.limit;
+        if(limit<0)
+            return;
+        if(limit==0) {
+            ref.strong = null;
+            return;
+        }
+        recent.add(ref);
+        if(recentSize.incrementAndGet()>limit) {
+            Ref<V> oldest = recent.poll();
+            if(oldest!=null) {
+                oldest.strong = null;
+                recentSize.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * {@link ConcurrentHashMap} doesn't allow null keys, so null is stored under a name that
+     * java.net never uses.
+     */
+    private static String mask(String key) {
+        return key!=null ? key : NULL_KEY;
+    }
+
+    private static final String NULL_KEY = "\u0000";
+
+    /**
+     * Removes the entries whose objects were garbage collected.
+     */
+    private void purge() {
+        Object r;
+        while((r=queue.poll())!=null) {
+            Ref<?> ref = (Ref<?>)r;
+            map.remove(ref.key,ref);
+        }
+    }
+}
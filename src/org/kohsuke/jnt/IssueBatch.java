@@ -0,0 +1,137 @@
+package org.kohsuke.jnt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects requests for individual issues and fetches them together.
+ *
+ * <p>
+ * Every {@link JNIssueTracker#get(int)} costs a round trip to xml.cgi, which adds up
+ * quickly when issues are looked up one by one from many places in the code.
+ * When the lookups go through a batch instead, {@link #get(int)} just records the ID
+ * and returns a {@link Handle}. The first time any handle needs its issue (or when
+ * {@link #flush()} is called), all the IDs requested so far are fetched with as few
+ * requests as possible, in batches sized by what the tracker can take.
+ *
+ * <pre>
+ * IssueBatch batch = tracker.batch();
+ * List&lt;IssueBatch.Handle> handles = ...;
+ * for (int id : ids)
+ *     handles.add(batch.get(id));  // no request is made here
+ * for (IssueBatch.Handle h : handles)
+ *     System.out.println(h.get().getShortDescription());   // fetched together on the first get()
+ * </pre>
+ *
+ * <p>
+ * Like the rest of the object model, this class is not thread-safe.
+ * @see JNIssueTracker#batch()
+ */
+public final class IssueBatch {
+    private final JNIssueTracker tracker;
+
+    /**
+     * Handles that are requested but not fetched yet, by their IDs.
+     */
+    private final Map<Integer,Handle> pending = new LinkedHashMap<Integer,Handle>();
+
+    IssueBatch(JNIssueTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Lazy reference to an issue requested through {@link IssueBatch}.
+     */
+    public final class Handle {
+        private final int id;
+        private JNIssue issue;
+        private boolean done;
+
+        private Handle(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Returns true if the issue is already fetched (or found to be non-existent.)
+         */
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Gets the issue, fetching all the pending issues in the batch if necessary.
+         *
+         * @throws ProcessingException
+         *      if the issue doesn't exist, or if the fetch failed.
+         */
+        public JNIssue get() throws ProcessingException {
+            if(!done)
+                flush();
+            if(issue==null)
+                throw new ProcessingException("No such issue. Id="+id);
+            return issue;
+        }
+
+        /**
+         * Gets the issue, or null if the issue doesn't exist.
+         */
+        public JNIssue getIfExists() throws ProcessingException {
+            if(!done)
+                flush();
+            return issue;
+        }
+
+        private void resolve(JNIssue issue) {
+            this.issue = issue;
+            this.done = true;
+        }
+    }
+
+    /**
+     * Requests an issue.
+     *
+     * <p>
+     * If the issue is already loaded, the returned handle is resolved right away.
+     * Requesting the same ID twice before the batch is flushed returns the same handle.
+     */
+    public Handle get(int id) {
+        Handle h = pending.get(id);
+        if(h==null) {
+            h = new Handle(id);
+            JNIssue cached = tracker.getIfCached(id);
+            if(cached!=null)
+                h.resolve(cached);
+            else
+                pending.put(id,h);
+        }
+        return h;
+    }
+
+    /**
+     * Gets the number of issues that are requested but not fetched yet.
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Fetches all the pending issues now.
+     */
+    public void flush() throws ProcessingException {
+        if(pending.isEmpty())
+            return;
+
+        List<Integer> ids = new ArrayList<Integer>(pending.keySet());
+        Map<Integer,JNIssue> r = JNIssue.bulkCreate(tracker.getProject(),JNIssue.bulkFetch(tracker.getProject(),ids));
+        // only remove them after the fetch succeeds, so that a failed flush can be retried
+        for (Handle h : pending.values())
+            h.resolve(r.get(h.id));
+        pending.clear();
+    }
+}
@@ -0,0 +1,386 @@
+package org.kohsuke.jnt;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Local copy of issue trackers, kept up to date incrementally.
+ *
+ * <p>
+ * Reports that look at all the issues of a project normally start with {@link JNIssueTracker#getAll()},
+ * which downloads the whole tracker every time. Instead, {@link #sync(JNProject)} downloads everything
+ * only once, then on subsequent runs only asks <tt>xmlupdate.cgi</tt> for the issues whose <tt>delta_ts</tt>
+ * is newer than the last time, and queries like {@link #getAll(JNProject)} run against the local copy.
+ *
+ * <p>
+ * Each issue is kept in the raw XML form, in the same format as {@link JNIssue#save(OutputStream)},
+ * under a directory for each project. Multiple projects can share the same mirror.
+ * The requests are made in the {@link RequestPriority#BULK} lane.
+ *
+ * <pre>
+ * IssueMirror mirror = new IssueMirror(new File("issues"));
+ * JNProject p = JavaNet.connect().getProject("glassfish");
+ * mirror.sync(p);
+ * for (JNIssue i : mirror.getAll(p).values())
+ *     ...
+ * </pre>
+ */
+public final class IssueMirror {
+    private final File dir;
+
+    /**
+     * @param dir
+     *      Directory to store the issues. Created if it doesn't exist.
+     */
+    public IssueMirror(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Brings the local copy of the issue tracker of the given project up to date.
+     *
+     * @return
+     *      the issues that were added or updated, by their IDs.
+     */
+    public synchronized Map<Integer,JNIssue> sync(JNProject project) throws ProcessingException {
+        RequestPriority old = RequestPriority.BULK.makeCurrent();
+        try {
+            File pdir = getProjectDir(project);
+            pdir.mkdirs();
+            Properties state = loadState(pdir);
+            long started = System.currentTimeMillis();
+
+            final Sync s = new Sync(project,pdir,state.getProperty(DELTA_TS));
+            String since = state.getProperty(SINCE);
+            if(since==null) {
+                // first time. download everything
+                new IssueScanner(project,IssueScanner.DEFAULT_PARALLELISM).scan(new IssueScanner.Sink() {
+                    public int accept(Document doc) throws ProcessingException {
+                        try {
+                            return s.store(doc);
+                        } catch (IOException e) {
+                            throw new ProcessingException(e);
+                        }
+                    }
+                });
+            } else {
+                // the issues are streamed one by one, but the time span is still split
+                // so that the server doesn't have to produce a huge response at once
+                JNIssueTracker.Visitor v = new JNIssueTracker.Visitor() {
+                    public void visit(JNIssue issue) throws ProcessingException {
+                        try {
+                            s.store(issue);
+                        } catch (IOException e) {
+                            throw new ProcessingException(e);
+                        }
+                    }
+                };
+                long end = started+DAY;
+                DateFormat f = createQueryFormat();
+                for( long t=Long.parseLong(since)-OVERLAP; t<end; t+=MONTH )
+                    JNIssue.bulkUpdateStream(project,
+                        "include_attachments=false&ts="+f.format(new Date(t))+"&ts_end="+f.format(new Date(t+MONTH)),true,v);
+            }
+
+            // issues updated while we were downloading might have been missed, but their delta_ts
+            // is newer than the time this sync started, so the next sync starts from there.
+            // starting from the newest delta_ts instead would scan the whole history again
+            // for a project that has been quiet for a long time.
+            if(s.deltaTs!=null)
+                state.setProperty(DELTA_TS,s.deltaTs);
+            state.setProperty(SINCE,String.valueOf(started));
+            saveState(pdir,state);
+
+            return s.updated;
+        } catch (IOException e) {
+            throw new ProcessingException("Failed to update the local copy of the issues of "+project.getName(),e);
+        } finally {
+            old.makeCurrent();
+        }
+    }
+
+    /**
+     * One run of {@link IssueMirror#sync(JNProject)}.
+     */
+    private final class Sync {
+        private final JNProject project;
+        private final File pdir;
+        private final Map<Integer,JNIssue> updated = new TreeMap<Integer,JNIssue>();
+        /**
+         * The newest <tt>delta_ts</tt> seen so far. Null if none.
+         */
+        private String deltaTs;
+        private final DateFormat deltaTsFormat = createFormat("yyyyMMddHHmmss");
+
+        Sync(JNProject project, File pdir, String deltaTs) {
+            this.project = project;
+            this.pdir = pdir;
+            this.deltaTs = deltaTs;
+        }
+
+        /**
+         * Writes the issues in the xml.cgi output to the disk.
+         *
+         * @return
+         *      the number of issues found in the document.
+         */
+        int store(Document doc) throws ProcessingException, IOException {
+            int n = 0;
+            for( Element issue : issues(doc) ) {
+                int id = Integer.parseInt(issue.elementTextTrim("issue_id"));
+                String status = issue.attributeValue("status_code");
+                if(status.equals("404"))
+                    continue;   // not found
+                if(!status.equals("200"))
+                    throw new ProcessingException("bad status code for "+id+" : "+issue.attributeValue("status_message"));
+                n++;
+                store(project.getIssueTracker().refresh(id,issue));
+            }
+            return n;
+        }
+
+        /**
+         * Writes an issue to the disk. The file is written aside and then renamed over the old one,
+         * so a failed sync leaves the previous copy intact. Where the platform can rename over an
+         * existing file, that's atomic too, so a reader never sees a half-written issue.
+         */
+        void store(JNIssue issue) throws IOException, ProcessingException {
+            int id = issue.getId();
+            File dst = getIssueFile(pdir,id);
+            if(dst.exists() && isSame(issue,load(project,id,dst)))
+                return;     // seen in the last sync, since incremental updates overlap
+
+            File tmp = File.createTempFile("issue"+id,".tmp",pdir);
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                issue.save(out);
+            } finally {
+                out.close();
+            }
+            try {
+                replace(tmp,dst);
+            } catch (IOException e) {
+                tmp.delete();
+                throw e;
+            }
+
+            updated.put(id,issue);
+
+            // delta_ts is fixed width, so it sorts as a string
+            String ts;
+            try {
+                ts = deltaTsFormat.format(new Date(issue.getLastModifiedTime()));
+            } catch (IllegalStateException e) {
+                return;     // no usable delta_ts
+            }
+            if(deltaTs==null || ts.compareTo(deltaTs)>0)
+                deltaTs = ts;
+        }
+    }
+
+    /**
+     * Checks if the two copies of an issue have the same <tt>delta_ts</tt>.
+     */
+    private static boolean isSame(JNIssue a, JNIssue b) {
+        try {
+            return a.getLastModifiedTime()==b.getLastModifiedTime();
+        } catch (IllegalStateException e) {
+            return false;   // can't tell
+        }
+    }
+
+    /**
+     * Gets the local copy of an issue.
+     *
+     * @return
+     *      null if the issue isn't in the local copy.
+     */
+    public JNIssue get(JNProject project, int id) throws ProcessingException {
+        File f = getIssueFile(getProjectDir(project),id);
+        if(!f.exists())
+            return null;
+        return load(project,id,f);
+    }
+
+    /**
+     * Gets all the issues in the local copy of the issue tracker of the given project.
+     *
+     * @return
+     *      the map is from the id to {@link JNIssue}. Empty if the project was never synchronized.
+     */
+    public Map<Integer,JNIssue> getAll(JNProject project) throws ProcessingException {
+        Map<Integer,JNIssue> r = new TreeMap<Integer,JNIssue>();
+        File[] files = getProjectDir(project).listFiles();
+        if(files==null)
+            return r;
+        for (File f : files) {
+            String n = f.getName();
+            if(!n.endsWith(ISSUE))
+                continue;
+            int id;
+            try {
+                id = Integer.parseInt(n.substring(0,n.length()-ISSUE.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            r.put(id,load(project,id,f));
+        }
+        return r;
+    }
+
+    /**
+     * Gets the last modified date of the newest issue in the local copy.
+     *
+     * @return
+     *      null if the project was never synchronized.
+     */
+    public Calendar getHighWaterMark(JNProject project) throws ProcessingException {
+        String ts = loadState(getProjectDir(project)).getProperty(DELTA_TS);
+        if(ts==null)
+            return null;
+        GregorianCalendar c = new GregorianCalendar(TimeZone.getTimeZone("GMT"));
+        c.setTime(parseDeltaTs(ts));
+        return c;
+    }
+
+    private JNIssue load(JNProject project, int id, File f) throws ProcessingException {
+        try {
+            InputStream in = new FileInputStream(f);
+            try {
+                return project.getIssueTracker().load(id,in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new ProcessingException("Failed to read "+f,e);
+        }
+    }
+
+    private File getProjectDir(JNProject project) {
+        return new File(dir,project.getName());
+    }
+
+    private static File getIssueFile(File pdir, int id) {
+        return new File(pdir,id+ISSUE);
+    }
+
+    private static Properties loadState(File pdir) throws ProcessingException {
+        Properties state = new Properties();
+        File f = new File(pdir,STATE);
+        if(!f.exists())
+            return state;
+        try {
+            InputStream in = new FileInputStream(f);
+            try {
+                state.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new ProcessingException("Failed to read "+f,e);
+        }
+        return state;
+    }
+
+    private static void saveState(File pdir, Properties state) throws IOException {
+        File tmp = new File(pdir,STATE+".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            state.store(out,null);
+        } finally {
+            out.close();
+        }
+        replace(tmp,new File(pdir,STATE));
+    }
+
+    /**
+     * Renames the file over another one.
+     *
+     * <p>
+     * On Windows, {@link File#renameTo(File)} fails if the destination exists, so only then is it deleted first.
+     * There's a moment when neither file is in place, but that's the best we can do there.
+     */
+    private static void replace(File src, File dst) throws IOException {
+        if(src.renameTo(dst))
+            return;
+        dst.delete();
+        if(!src.renameTo(dst))
+            throw new IOException("Failed to rename "+src+" to "+dst);
+    }
+
+    /**
+     * Gets the issue elements in the xml.cgi output.
+     */
+    @SuppressWarnings({"unchecked"})
+    private static List<Element> issues(Document doc) {
+        return (List<Element>)doc.getRootElement().elements("issue");
+    }
+
+    private static Date parseDeltaTs(String ts) throws ProcessingException {
+        try {
+            return createFormat("yyyyMMddHHmmss").parse(ts);
+        } catch (ParseException e) {
+            throw new ProcessingException("Unexpected delta_ts "+ts,e);
+        }
+    }
+
+    /**
+     * Format of the time span parameters of xmlupdate.cgi.
+     */
+    private static DateFormat createQueryFormat() {
+        return createFormat("yyyy-MM-dd%20HH:mm:ss");
+    }
+
+    /**
+     * java.net servers send and expect time stamps in PST.
+     * {@link SimpleDateFormat} isn't thread-safe, so a new one is created every time.
+     */
+    private static DateFormat createFormat(String pattern) {
+        SimpleDateFormat f = new SimpleDateFormat(pattern);
+        f.setTimeZone(TimeZone.getTimeZone("PST"));
+        return f;
+    }
+
+    private static final String ISSUE = ".xml";
+    private static final String STATE = "mirror.properties";
+
+    /**
+     * The newest <tt>delta_ts</tt> seen, as is.
+     */
+    private static final String DELTA_TS = "delta_ts";
+    /**
+     * Where the next incremental update starts, in milliseconds since the epoch.
+     */
+    private static final String SINCE = "since";
+
+    private static final long DAY = 24L*60*60*1000;
+    private static final long MONTH = 30*DAY;
+    /**
+     * Incremental updates start a bit earlier than necessary, to be tolerant of
+     * the clock skew between us and the server.
+     */
+    private static final long OVERLAP = 60L*60*1000;
+}
@@ -0,0 +1,173 @@
+package org.kohsuke.jnt;
+
+import org.dom4j.Document;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Downloads all the issues of a project, in windows of IDs fetched concurrently.
+ * The size of the windows is the {@link BatchSizer batch size} of the tracker when the scan starts.
+ *
+ * <p>
+ * Issue IDs can have large gaps, for example where issues were moved to another project,
+ * so an empty window doesn't mean the end. The scan first gallops over windows 0, 1, 2, 4, 8, ...
+ * until one comes back empty, which estimates where the issues end. Then all the windows below that
+ * are fetched concurrently, and so are the windows up to {@link #GAP} IDs past the highest
+ * non-empty one, which grows as the results come in.
+ *
+ * <p>
+ * Only the HTTP requests are made from multiple threads. The fetched documents are handed to the
+ * {@link Sink} on the calling thread, since the object model isn't thread-safe.
+ * The total concurrency is still subject to {@link RequestGovernor}.
+ */
+final class IssueScanner {
+    private final JNProject project;
+    private final int parallelism;
+    /**
+     * Number of IDs in a window.
+     */
+    private int size;
+    /**
+     * Number of empty windows tolerated past the highest non-empty one.
+     */
+    private int gap;
+
+    /**
+     * Receives the documents, in no particular order.
+     */
+    interface Sink {
+        /**
+         * @param doc
+         *      the output from xml.cgi.
+         * @return
+         *      the number of issues found in the document.
+         */
+        int accept(Document doc) throws ProcessingException;
+    }
+
+    IssueScanner(JNProject project, int parallelism) {
+        if(parallelism<1)
+            throw new IllegalArgumentException("parallelism must be positive: "+parallelism);
+        this.project = project;
+        this.parallelism = parallelism;
+    }
+
+    void scan(Sink sink) throws ProcessingException {
+        size = project.getIssueTracker().getBatchSizer().getSize();
+        gap = (GAP+size-1)/size;
+
+        // windows that are already fetched by galloping
+        Set<Integer> probed = new HashSet<Integer>();
+        // the highest window known to have issues. -1 if none
+        int top = -1;
+
+        int w = 0;
+        while(true) {
+            probed.add(w);
+            if(accept(sink,fetch(w))==0)
+                break;
+            top = w;
+            w = w==0 ? 1 : w*2;
+        }
+
+        final RequestPriority priority = RequestPriority.current();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism,new ThreadFactory() {
+            private int n;
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r,"Issue scanner for "+project.getName()+" #"+(++n));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            CompletionService<Window> cs = new ExecutorCompletionService<Window>(pool);
+            int bound = Math.max(w,top+gap);
+            int next = 0;
+            int inFlight = 0;
+            while(true) {
+                for( ; inFlight<parallelism && next<=bound; next++ ) {
+                    if(probed.contains(next))
+                        continue;
+                    final int index = next;
+                    cs.submit(new Callable<Window>() {
+                        public Window call() throws ProcessingException {
+                            priority.makeCurrent();
+                            return new Window(index,fetch(index));
+                        }
+                    });
+                    inFlight++;
+                }
+                if(inFlight==0)
+                    return;
+
+                Window r = cs.take().get();
+                inFlight--;
+                if(accept(sink,r.docs)>0 && r.index>top) {
+                    top = r.index;
+                    bound = Math.max(bound,top+gap);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while fetching the issues of "+project.getName(),e);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if(t instanceof ProcessingException)
+                throw new ProcessingException(t.getMessage(),t);
+            if(t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if(t instanceof Error)
+                throw (Error)t;
+            throw new ProcessingException(t);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static final class Window {
+        private final int index;
+        private final List<Document> docs;
+
+        Window(int index, List<Document> docs) {
+            this.index = index;
+            this.docs = docs;
+        }
+    }
+
+    private static int accept(Sink sink, List<Document> docs) throws ProcessingException {
+        int n = 0;
+        for (Document doc : docs)
+            n += sink.accept(doc);
+        return n;
+    }
+
+    /**
+     * Fetches the issues whose IDs are in the given window.
+     */
+    private List<Document> fetch(int window) throws ProcessingException {
+        List<Integer> ids = new ArrayList<Integer>(size);
+        for( int id=window*size; id<(window+1)*size; id++ )
+            ids.add(id);
+        return JNIssue.bulkFetch(project,ids);
+    }
+
+    /**
+     * Number of IDs with no issue tolerated past the highest issue found.
+     */
+    static final int GAP = 1000;
+
+    /**
+     * Default number of concurrent requests.
+     */
+    static final int DEFAULT_PARALLELISM = 4;
+}
@@ -40,7 +40,7 @@ public final class JNFile extends JNObject {
         super(folder);
         this.folder = folder;
 
-        Element anchor = (Element)tr.selectSingleNode("TD[1]//A");  // XPath is 1-origin
+        Element anchor = Selector.of("TD[1]//A").selectSingleNode(tr);  // XPath is 1-origin
         href = new URL(folder.project.getURL(),anchor.attributeValue("href"));
         name = anchor.getTextTrim();
 
@@ -58,7 +58,7 @@ public final class JNFile extends JNObject {
 
         description = ((Element) tr.elements("TD").get(5)).getTextTrim();
 
-        Element infoLink = (Element)tr.selectSingleNode("TD[7]//A");  // XPath is 1-origin
+        Element infoLink = Selector.of("TD[7]//A").selectSingleNode(tr);  // XPath is 1-origin
         String href = infoLink.attributeValue("href");
 
         final String param = "?documentID=";
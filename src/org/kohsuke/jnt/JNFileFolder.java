@@ -4,7 +4,6 @@ import com.meterware.httpunit.WebForm;
 import com.meterware.httpunit.WebLink;
 import com.meterware.httpunit.WebResponse;
 import com.meterware.httpunit.protocol.UploadFileSpec;
-import org.dom4j.Document;
 import org.dom4j.Element;
 import org.xml.sax.SAXException;
 
@@ -12,6 +11,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.Collections;
@@ -43,14 +43,25 @@ public final class JNFileFolder extends JNObject {
     private final String name;
 
     /**
-     * Lazily parsed subfolders. From {@link String} to {@link JNFileFolder}.
+     * Lazily parsed contents of this folder.
      */
-    private Map<String,JNFileFolder> subFolders;
-
-    /**
-     * Lazily parsed files in this folder. From {@link String} to {@link JNFile}.
-     */
-    private Map<String,JNFile> files;
+    private final Cached<Contents> contents;
+
+    private static final class Contents {
+        /**
+         * From {@link String} to {@link JNFileFolder}.
+         */
+        private final Map<String,JNFileFolder> subFolders;
+        /**
+         * From {@link String} to {@link JNFile}.
+         */
+        private final Map<String,JNFile> files;
+
+        Contents(Map<String,JNFileFolder> subFolders, Map<String,JNFile> files) {
+            this.subFolders = Collections.unmodifiableMap(subFolders);
+            this.files = Collections.unmodifiableMap(files);
+        }
+    }
 
     /**
      * Parent folder, or null if this is the root.
@@ -64,6 +75,11 @@ public final class JNFileFolder extends JNObject {
         this.name = name;
         this.id = id;
         this.url = project._getURL()+"/servlets/ProjectDocumentList?folderID="+id+"&expandFolder="+id;
+        this.contents = new Cached<Contents>(root) {
+            protected Contents load() throws ProcessingException {
+                return parse();
+            }
+        };
     }
     
     /**
@@ -91,47 +107,64 @@ public final class JNFileFolder extends JNObject {
         return f;
     }
 
-    private void parse() throws ProcessingException {
-        new Scraper("Failed to parse the documents&files section") {
-            protected Object scrape() throws IOException, SAXException, ProcessingException, ParseException {
-                WebResponse response = goTo(url);
-                Document dom = Util.getDom4j(response);
-
-                // find the current folder
-                Element current = (Element)dom.selectSingleNode("//DIV[@id='projectdocumentlist']//LI[@class='selection']");
-
-                // parse sub folders
-                subFolders = new TreeMap<String,JNFileFolder>(CASE_INSENSITIVE_COMPARATOR);
-                for( Element anchor : (List<Element>)current.selectNodes("UL/LI/A[SPAN]") ) {
-                    // https://jaxb.dev.java.net/servlets/ProjectDocumentList?folderID=1747&expandFolder=1747
-                    String name = anchor.getTextTrim();
-                    // trim the trailing (n)
-                    name = name.substring(0,name.lastIndexOf(0xA0/*NBSP*/));
-                    String href = anchor.attributeValue("href");
-                    int sidx = href.indexOf("?folderID=");
-                    int eidx = href.indexOf("&expandFolder=");
-                    if(sidx==-1 || eidx==-1)
-                        throw new ProcessingException("Failed to parse the link "+href);
-
-                    int id = Integer.parseInt( href.substring(sidx+"?folderID=".length(),eidx) );
-
-                    subFolders.put(name,new JNFileFolder(project,JNFileFolder.this,name,id));
-                }
+    private Contents parse() throws ProcessingException {
+        return new Scraper<Contents>("Failed to parse the documents&files section") {
+            protected Contents scrape() throws IOException, SAXException, ProcessingException, ParseException {
+                final Map<String,JNFileFolder> subFolders = new TreeMap<String,JNFileFolder>(CASE_INSENSITIVE_COMPARATOR);
+                final Map<String,JNFile> files = new TreeMap<String,JNFile>(CASE_INSENSITIVE_COMPARATOR);
 
-                // find the current folder
+                final boolean[] foundCurrent = new boolean[1];
 
-                files = new TreeMap<String,JNFile>(CASE_INSENSITIVE_COMPARATOR);
+                HtmlExtractor x = new HtmlExtractor();
 
+                // find the current folder
+                x.add(Selector.of("//DIV[@id='projectdocumentlist']//LI[@class='selection']"), new HtmlExtractor.Handler() {
+                    public void onMatch(Element current) {
+                        foundCurrent[0] = true;
+                    }
+                });
+
+                // parse sub folders, which are listed under the current folder
+                x.add(Selector.of("//DIV[@id='projectdocumentlist']//LI[@class='selection']/UL/LI/A"), new HtmlExtractor.Handler() {
+                    public void onMatch(Element anchor) throws ProcessingException {
+                        if(anchor.element("SPAN")==null)
+                            return;
+
+                        // https://jaxb.dev.java.net/servlets/ProjectDocumentList?folderID=1747&expandFolder=1747
+                        String name = anchor.getTextTrim();
+                        // trim the trailing (n)
+                        name = name.substring(0,name.lastIndexOf(0xA0/*NBSP*/));
+                        String href = anchor.attributeValue("href");
+                        int sidx = href.indexOf("?folderID=");
+                        int eidx = href.indexOf("&expandFolder=");
+                        if(sidx==-1 || eidx==-1)
+                            throw new ProcessingException("Failed to parse the link "+href);
+
+                        int id = Integer.parseInt( href.substring(sidx+"?folderID=".length(),eidx) );
+
+                        subFolders.put(name,new JNFileFolder(project,JNFileFolder.this,name,id));
+                    }
+                });
+
+                // parse files. NekoHTML inserts TBODY between TABLE and TR
+                x.add(Selector.of("//DIV[@id='projectdocumentlist']//TD[@class='filebrowse']/DIV/TABLE/TBODY/TR"), new HtmlExtractor.Handler() {
+                    boolean header = true;  // row 0 == header
+                    public void onMatch(Element tr) throws ProcessingException, ParseException, MalformedURLException {
+                        if(header) {
+                            header = false;
+                            return;
+                        }
+                        JNFile file = new JNFile(JNFileFolder.this,tr);
+                        files.put(file.getName(),file);
+                    }
+                });
 
-                List trs = dom.selectNodes("//DIV[@id='projectdocumentlist']//TD[@class='filebrowse']/DIV/TABLE/TR");
-                for( int i=1; i<trs.size(); i++ ) { // row 0 == header
-                    Element tr = (Element)trs.get(i);
+                fetch(url,x);
 
-                    JNFile file = new JNFile(JNFileFolder.this,tr);
-                    files.put(file.getName(),file);
-                }
+                if(!foundCurrent[0])
+                    throw new ProcessingException("Unable to find the current folder in "+url);
 
-                return null;
+                return new Contents(subFolders,files);
             }
         }.run();
     }
@@ -178,8 +211,7 @@ public final class JNFileFolder extends JNObject {
      *      can be empty but never be null. read-only.
      */
     public Map<String, JNFileFolder> getSubFolders() throws ProcessingException {
-        if(subFolders==null)  parse();
-        return Collections.unmodifiableMap(subFolders);
+        return contents.get().subFolders;
     }
 
     /**
@@ -189,8 +221,7 @@ public final class JNFileFolder extends JNObject {
      *      can be empty but never be null. read-only.
      */
     public Map<String, JNFile> getFiles() throws ProcessingException {
-        if(files==null)  parse();
-        return Collections.unmodifiableMap(files);
+        return contents.get().files;
     }
 
     /**
@@ -248,12 +279,11 @@ public final class JNFileFolder extends JNObject {
                                 actor.act(form);
                                 r = checkError(form.submit());
 
-                                if( r.getImageWithAltText("Alert notification")!=null )
+                                if( hasMarker(r,"Alert notification") && r.getImageWithAltText("Alert notification")!=null )
                                     // TODO: obtain the error message
                                     throw new ProcessingException(errorMessage);
 
                                 reset();
-                                parse();
                                 JNFile file = getFile(fileName);
                                 if(file==null)
                                     throw new ProcessingException("Unable to find the file "+fileName);
@@ -305,12 +335,11 @@ public final class JNFileFolder extends JNObject {
                 actor.act(form);
                 r = checkError(form.submit());
 
-                if( r.getImageWithAltText("Alert notification")!=null )
+                if( hasMarker(r,"Alert notification") && r.getImageWithAltText("Alert notification")!=null )
                     // TODO: obtain the error message
                     throw new ProcessingException(errorMessage);
 
                 reset();
-                parse();
                 JNFile file = getFile(fileName);
                 if(file==null)
                     throw new ProcessingException(errorMessage);
@@ -423,7 +452,7 @@ public final class JNFileFolder extends JNObject {
                 if(response.getText().indexOf("Validation error")!=-1)
                     throw new ProcessingException("failed to create a folder");
 
-                subFolders = null;
+                reset();
                 return getSubFolder(name);
             }
         }.run();
@@ -483,8 +512,7 @@ public final class JNFileFolder extends JNObject {
      * Forces a reparse.
      */
     /*package*/ void reset() {
-        subFolders = null;
-        files = null;
+        contents.invalidate();
     }
 
     public boolean equals(Object o) {
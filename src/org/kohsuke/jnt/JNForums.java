@@ -23,7 +23,11 @@ public final class JNForums extends JNObject {
     /**
      * List of all {@link JNForum}s. Parsed lazily.
      */
-    private List<JNForum> forums;
+    private final Cached<List<JNForum>> forums = new Cached<List<JNForum>>(root) {
+        protected List<JNForum> load() throws ProcessingException {
+            return Collections.unmodifiableList(parse());
+        }
+    };
 
     JNForums(JNProject parent) {
         super(parent);
@@ -37,9 +41,7 @@ public final class JNForums extends JNObject {
      *      always non-null. Can be empty.
      */
     public List<JNForum> getForums() throws ProcessingException {
-        if(forums==null)
-            parse();
-        return Collections.unmodifiableList(forums);
+        return forums.get();
     }
 
     /**
@@ -52,9 +54,7 @@ public final class JNForums extends JNObject {
      *      null if no such forum is found
      */
     public JNForum getForum(String name) throws ProcessingException {
-        if(forums==null)
-            parse();
-        for( JNForum f : forums ) {
+        for( JNForum f : forums.get() ) {
             if(f.getName().equals(name))
                 return f;
         }
@@ -89,9 +89,8 @@ public final class JNForums extends JNObject {
 
                 checkError(form.submit());
 
-                forums = null;
-                parse();
-                for( JNForum f : forums ) {
+                reset();
+                for( JNForum f : forums.get() ) {
                     if(f.getName().equals(name))
                         return f;
                 }
@@ -104,29 +103,26 @@ public final class JNForums extends JNObject {
     /**
      * Parse the HTML page
      */
-    private void parse() throws ProcessingException {
-        // load all information that is on the membership pages
-
-        forums = new ArrayList<JNForum>();
+    private List<JNForum> parse() throws ProcessingException {
+        final List<JNForum> forums = new ArrayList<JNForum>();
 
-        new Scraper("Unable to parse the forum view page") {
-            protected Object scrape() throws IOException, SAXException, ProcessingException {
-                WebResponse response = goTo(project._getURL()+"/servlets/ProjectForumView");
-                Document dom = Util.getDom4j(response);
+        return new Scraper<List<JNForum>>("Unable to parse the forum view page") {
+            protected List<JNForum> scrape() throws IOException, SAXException, ProcessingException {
+                Document dom = fetch(project._getURL()+"/servlets/ProjectForumView");
 
-                Element table = (Element)dom.selectSingleNode("//DIV[@id='projectforumview']/TABLE");
+                Element table = Selector.of("//DIV[@id='projectforumview']/TABLE").selectSingleNode(dom);
 
                 if (table == null)
                     // theres no forum.
-                    return null;
+                    return forums;
 
-                List rows = table.selectNodes("TR");
+                List rows = Selector.of("TR").selectNodes(table);
 
                 // we start from row 1, since row 0 is the header row.
                 for (int r=1; r<rows.size(); r++) {
                     Element row = (Element) rows.get(r);
 
-                    Element link = (Element) row.selectSingleNode("TD[1]/A");
+                    Element link = Selector.of("TD[1]/A").selectSingleNode(row);
                     String name = link.getText();
                     String href = link.attributeValue("href");
                     int idx = href.lastIndexOf('=')+1;
@@ -144,16 +140,15 @@ public final class JNForums extends JNObject {
                         n, description ));
                 }
 
-                return null;
+                return forums;
             }
         }.run();
-
     }
 
     /**
      * Forces the forum info to be reparsed.
      */
     /*package*/ void reset() {
-        forums = null;
+        forums.invalidate();
     }
 }
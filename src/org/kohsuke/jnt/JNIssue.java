@@ -1,15 +1,19 @@
 package org.kohsuke.jnt;
 
-import com.meterware.httpunit.WebResponse;
 import org.dom4j.Document;
+import org.dom4j.DocumentException;
 import org.dom4j.Element;
-import org.dom4j.io.DOMReader;
+import org.dom4j.io.SAXReader;
 import org.dom4j.io.XMLWriter;
 import org.xml.sax.SAXException;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -20,10 +24,24 @@ import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * An issue.
  *
+ * <p>
+ * The fields are parsed once when the issue is created, and kept in a compact form.
+ * The XML that the issue was created from is only kept compressed, along with the comments and the activities,
+ * which are parsed from it when they are asked for. So an issue takes up far less memory than the XML,
+ * and the accessors of the fields don't do any work.
+ *
+ * <p>
+ * Issues are immutable, and safe to use from multiple threads.
+ *
  * @author Kohsuke Kawaguchi
  */
 public final class JNIssue extends JNObject {
@@ -31,17 +49,57 @@ public final class JNIssue extends JNObject {
     private final JNProject project;
     private final int id;
 
-    private final Element rawData;
+    /**
+     * Null if the XML had a value that's not one of the constants.
+     * The accessors then fail just like they did when they parsed the XML every time.
+     */
+    private final Priority priority;
+    private final IssueStatus status;
+    private final IssueType type;
+    /**
+     * Null if not resolved.
+     */
+    private final IssueResolution resolution;
+    /**
+     * True if the XML had an unknown resolution.
+     */
+    private final boolean unknownResolution;
+
+    private final String shortDescription;
+    private final JNUser reporter;
+    private final String assignedTo;
+    /**
+     * Null if not set.
+     */
+    private final String statusWhiteboard;
+    private final IssueVersion version;
+    private final String platform, component, subComponent;
+    private final int votes;
+
+    /**
+     * In milliseconds since the epoch. {@link #NO_DATE} if the XML had a malformed date.
+     */
+    private final long creationDate, lastModified;
+
+    /**
+     * The "issue" element, serialized and deflated.
+     */
+    private final byte[] xml;
+
+    /**
+     * The "issue" element parsed from {@link #xml}, if it's still around.
+     */
+    private volatile SoftReference<Element> rawData;
 
     /**
      * Lazily created list of {@link Description}s.
      */
-    private List<Description> descriptions;
+    private volatile List<Description> descriptions;
 
     /**
      * Lazily created list of {@link Activity}s.
      */
-    private List<Activity> activities;
+    private volatile List<Activity> activities;
 
     public abstract class Item<T extends Item> implements Comparable<Item<T>> {
         T prev,next;
@@ -60,6 +118,9 @@ public final class JNIssue extends JNObject {
 
         /**
          * Gets the user who created this item.
+         *
+         * @return
+         *      null if the issue doesn't say.
          */
         public abstract JNUser getAuthor();
 
@@ -73,7 +134,7 @@ public final class JNIssue extends JNObject {
          * in milliseconds.
          */
         public long getAge() {
-            return getTimestamp().getTimeInMillis()-getParent().getCreationDate().getTimeInMillis();
+            return getTimestamp().getTimeInMillis()-getParent().getCreationTime();
         }
 
         /**
@@ -88,34 +149,45 @@ public final class JNIssue extends JNObject {
      * A comment added to an issue.
      */
     public final class Description extends Item<Description> {
+        private final JNUser author;
+        private final long timestamp;
+        private final String text;
+
         /**
-         * The 'long_desc' element.
+         * @param e
+         *      The 'long_desc' element.
          */
-        private final Element e;
-
         Description(Element e) {
-            this.e = e;
+            this.author = getUserLeniently(e.elementText("who"));
+            this.timestamp = parseDateLeniently(CREATION_DATE_FORMAT,e.elementText("issue_when"));
+            this.text = e.elementText("thetext");
         }
 
         /**
          * Gets the user who added this comment.
+         *
+         * @return
+         *      null if the issue doesn't say.
          */
         public JNUser getAuthor() {
-            return root.getUser(e.elementText("who"));
+            return author;
         }
 
         /**
          * Gets the timestamp when this comment was added.
+         *
+         * @throws IllegalStateException
+         *      if the issue has a malformed timestamp for this comment.
          */
         public Calendar getTimestamp() {
-            return formatDate(creationDateFormat, e.elementText("issue_when"));
+            return toCalendar(checkDate(timestamp,"comment"));
         }
 
         /**
          * Gets the actual comment text.
          */
         public String getText() {
-            return e.elementText("thetext");
+            return text;
         }
     }
 
@@ -182,33 +254,41 @@ public final class JNIssue extends JNObject {
     }
 
     public final class UpdateActivity extends Activity {
+        private final JNUser author;
+        private final long timestamp;
+        private final IssueField field;
+        private final String oldValue, newValue;
+
         /**
-         * The 'activity' element.
+         * @param e
+         *      The 'activity' element.
          */
-        private final Element e;
-
         UpdateActivity(Element e) {
-            this.e = e;
+            this.author = getUserLeniently(e.elementText("user"));
+            this.timestamp = parseDateLeniently(CREATION_DATE_FORMAT,e.elementText("when"));
+            this.field = IssueField.find(e.elementText("field_name"));
+            this.oldValue = e.elementText("oldvalue");
+            this.newValue = e.elementText("newvalue");
         }
 
         public JNUser getAuthor() {
-            return root.getUser(e.elementText("user"));
+            return author;
         }
 
         public Calendar getTimestamp() {
-            return formatDate(creationDateFormat, e.elementText("when"));
+            return toCalendar(checkDate(timestamp,"activity"));
         }
 
         public IssueField getField() {
-            return IssueField.find(e.elementText("field_name"));
+            return field;
         }
 
         public String getOldValue() {
-            return e.elementText("oldvalue");
+            return oldValue;
         }
 
         public String getNewValue() {
-            return e.elementText("newvalue");
+            return newValue;
         }
     }
 
@@ -245,13 +325,41 @@ public final class JNIssue extends JNObject {
 
         if(rawData==null) {
             // fetch now
-            Document doc = bulkFetch(project,Collections.singletonList(id) );
+            Document doc = bulkFetch(project,Collections.singletonList(id)).get(0);
             rawData = doc.getRootElement().element("issue");
             if(rawData==null)
                 throw new ProcessingException("No such issue. Id="+id);
         }
 
-        this.rawData = rawData;
+        priority = parseEnum(Priority.class,rawData.elementTextTrim("priority"));
+        status = parseEnum(IssueStatus.class,rawData.elementText("issue_status"));
+        type = parseEnum(IssueType.class,rawData.elementText("issue_type"));
+        String r = rawData.elementText("resolution");
+        resolution = parseEnum(IssueResolution.class,r);
+        unknownResolution = resolution==null && (r==null || r.length()>0);
+
+        shortDescription = rawData.elementText("short_desc");
+        reporter = getUserLeniently(rawData.elementText("reporter"));
+        assignedTo = rawData.elementText("assigned_to");
+        String wb = rawData.elementText("status_whiteboard");
+        statusWhiteboard = wb==null || wb.length()==0 ? null : wb;
+        version = new IssueVersion(intern(rawData.elementText("version")));
+        platform = intern(rawData.elementText("rep_platform"));
+        component = intern(rawData.elementText("component"));
+        subComponent = intern(rawData.elementText("subcomponent"));
+
+        int v;
+        try {
+            v = Integer.parseInt(rawData.elementText("votes"));
+        } catch (NumberFormatException e) {
+            v = 0;
+        }
+        votes = v;
+
+        creationDate = parseDateLeniently(CREATION_DATE_FORMAT,rawData.elementText("creation_ts"));
+        lastModified = parseDateLeniently(LAST_MODIFIED_FORMAT,rawData.elementText("delta_ts"));
+
+        xml = compress(rawData);
     }
 
     /**
@@ -259,12 +367,24 @@ public final class JNIssue extends JNObject {
      *
      * <p>
      * See https://javanettasks.dev.java.net/issues/issuezilla.dtd for the format.
+     * The element is parsed again from the compressed form when the last one is garbage collected,
+     * so it shouldn't be modified.
      *
      * @return
      *      the "issue" element.
      */
     public Element getRawData() {
-        return rawData;
+        SoftReference<Element> ref = rawData;
+        Element e = ref!=null ? ref.get() : null;
+        if(e==null) {
+            try {
+                e = new SAXReader().read(new InflaterInputStream(new ByteArrayInputStream(xml))).getRootElement();
+            } catch (DocumentException x) {
+                throw new AssertionError(x);    // we wrote it
+            }
+            rawData = new SoftReference<Element>(e);
+        }
+        return e;
     }
 
     /**
@@ -285,7 +405,9 @@ public final class JNIssue extends JNObject {
      * Gets the priority of this issue.
      */
     public Priority getPriority() {
-        return Priority.valueOf(rawData.elementTextTrim("priority"));
+        if(priority==null)
+            return Priority.valueOf(getRawData().elementTextTrim("priority"));
+        return priority;
     }
 
     /**
@@ -297,14 +419,17 @@ public final class JNIssue extends JNObject {
      *
      */
     public String getShortDescription() {
-        return rawData.elementText("short_desc");
+        return shortDescription;
     }
 
     /**
      * Gets the reporter of this issue.
+     *
+     * @return
+     *      null if the issue doesn't say.
      */
     public JNUser getReporter() {
-        return root.getUser(rawData.elementText("reporter"));
+        return reporter;
     }
 
     /**
@@ -315,94 +440,108 @@ public final class JNIssue extends JNObject {
      * It's not clear exactly what's allowed and what's not.
      */
     public String getAssignedTo() {
-        return rawData.elementText("assigned_to");
+        return assignedTo;
     }
 
     /**
      * Gets the current status of this issue.
      */
     public IssueStatus getStatus() {
-        return IssueStatus.valueOf(rawData.elementText("issue_status"));
+        if(status==null)
+            return IssueStatus.valueOf(getRawData().elementText("issue_status"));
+        return status;
     }
 
     /**
      * Gets the 'status whiteboard' text, or null if not set.
      */
     public String getStatusWhiteboard() {
-        String s = rawData.elementText("status_whiteboard");
-        if(s.length()==0)   return null;
-        return s;
+        return statusWhiteboard;
     }
 
     /**
      * Gets the resolution of this issue.
      */
     public IssueResolution getResolution() {
-        String s = rawData.elementText("resolution");
-        if(s.length()==0) return null;
-        return IssueResolution.valueOf(s);
+        if(unknownResolution) {
+            String s = getRawData().elementText("resolution");
+            if(s.length()==0) return null;
+            return IssueResolution.valueOf(s);
+        }
+        return resolution;
     }
 
     /**
      * Gets the version to which this issue belongs to.
      */
     public IssueVersion getVersion() {
-        return new IssueVersion(rawData.elementText("version"));
+        return version;
     }
 
     public String _getPlatform() {
-        return rawData.elementText("rep_platform");
+        return platform;
     }
 
     public String getComponent() {
-        return rawData.elementText("component");
+        return component;
     }
 
     public String getSubComponent() {
-        return rawData.elementText("subcomponent");
+        return subComponent;
     }
 
     /**
      * Gets the number of votes on this issue.
      */
     public int getVotes() {
-        try {
-            return Integer.parseInt(rawData.elementText("votes"));
-        } catch (NumberFormatException e) {
-            return 0;
-        }
+        return votes;
     }
 
     /**
      * Gets the type of the issue.
      */
     public IssueType getType() {
-        return IssueType.valueOf(rawData.elementText("issue_type"));
-    }
-
-    private static final SimpleDateFormat lastModifiedFormat = new SimpleDateFormat("yyyyMMddHHmmss");
-    private static final SimpleDateFormat creationDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-    private static final TimeZone PST = TimeZone.getTimeZone("PST");
-    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
-    static {
-        // apparently java.net servers are in PST,
-        // and when they send time stamps they send local time
-        lastModifiedFormat.setTimeZone(PST);
-        creationDateFormat.setTimeZone(PST);
+        if(type==null)
+            return IssueType.valueOf(getRawData().elementText("issue_type"));
+        return type;
     }
 
     /**
      * Gets the last modified date of this issue.
      */
     public Calendar getLastModified() {
-        return formatDate(lastModifiedFormat,rawData.elementText("delta_ts"));
+        return toCalendar(getLastModifiedTime());
+    }
+
+    /**
+     * Gets the last modified date of this issue, in milliseconds since the epoch.
+     *
+     * @throws IllegalStateException
+     *      if the issue has a malformed or no <tt>delta_ts</tt>.
+     */
+    public long getLastModifiedTime() {
+        if(lastModified==NO_DATE)
+            return parseDate(LAST_MODIFIED_FORMAT,getRawData().elementText("delta_ts"));
+        return lastModified;
     }
 
     /**
      * Gets the timestamp when this issue was created.
      */
     public Calendar getCreationDate() {
-        return formatDate(creationDateFormat,rawData.elementText("creation_ts"));
+        return toCalendar(getCreationTime());
+    }
+
+    /**
+     * Gets the timestamp when this issue was created, in milliseconds since the epoch.
+     *
+     * @throws IllegalStateException
+     *      if the issue has a malformed or no <tt>creation_ts</tt>.
+     */
+    public long getCreationTime() {
+        if(creationDate==NO_DATE)
+            return parseDate(CREATION_DATE_FORMAT,getRawData().elementText("creation_ts"));
+        return creationDate;
     }
 
     /**
@@ -415,13 +554,15 @@ public final class JNIssue extends JNObject {
      *      Never empty, never null. Older changes first.
      */
     public List<Description> getDescriptions() {
-        if(descriptions==null) {
-            descriptions = new ArrayList<Description>();
-            for( Element e : (List<Element>)rawData.elements("long_desc") )
-                descriptions.add(new Description(e));
-            makeDoubeLinkedList(descriptions);
+        List<Description> r = descriptions;
+        if(r==null) {
+            r = new ArrayList<Description>();
+            for( Element e : (List<Element>)getRawData().elements("long_desc") )
+                r.add(new Description(e));
+            makeDoubeLinkedList(r);
+            descriptions = r;
         }
-        return descriptions;
+        return r;
     }
 
     /**
@@ -436,14 +577,16 @@ public final class JNIssue extends JNObject {
      *      always non-empty list. Older changes first.
      */
     public List<Activity> getActivities() {
-        if(activities==null) {
-            activities = new ArrayList<Activity>();
-            activities.add(new CreationActivity());
-            for( Element e : (List<Element>)rawData.elements("activity") )
-                activities.add(new UpdateActivity(e));
-            makeDoubeLinkedList(activities);
+        List<Activity> r = activities;
+        if(r==null) {
+            r = new ArrayList<Activity>();
+            r.add(new CreationActivity());
+            for( Element e : (List<Element>)getRawData().elements("activity") )
+                r.add(new UpdateActivity(e));
+            makeDoubeLinkedList(r);
+            activities = r;
         }
-        return activities;
+        return r;
     }
 
     /**
@@ -452,7 +595,13 @@ public final class JNIssue extends JNObject {
      * @see JNIssueTracker#load(int, InputStream)  
      */
     public void save(OutputStream out) throws IOException {
-        new XMLWriter(out).write(rawData);
+        // the compressed form is exactly what XMLWriter writes for the element
+        InputStream in = new InflaterInputStream(new ByteArrayInputStream(xml));
+        byte[] buf = new byte[8192];
+        int len;
+        while((len=in.read(buf))>=0)
+            out.write(buf,0,len);
+        out.flush();
     }
 
     private <T extends Item<T>> void makeDoubeLinkedList(List<T> items) {
@@ -467,19 +616,117 @@ public final class JNIssue extends JNObject {
             prev.next = null;
     }
 
-    private Calendar formatDate(SimpleDateFormat f, String text) {
+    private static byte[] compress(Element e) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            OutputStream out = new DeflaterOutputStream(buf,deflater);
+            XMLWriter w = new XMLWriter(out);
+            w.write(e);
+            w.close();
+        } catch (IOException x) {
+            throw new AssertionError(x);    // impossible
+        } finally {
+            deflater.end();
+        }
+        return buf.toByteArray();
+    }
+
+    /**
+     * @return
+     *      null if the string isn't one of the constants.
+     */
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String s) {
+        if(s==null)     return null;
         try {
-            long t = f.parse(text).getTime();
-            // when returning a calendar, set the time zone to GMT
-            // so that user applications won't be affected by the server's timezone.
-            GregorianCalendar c = new GregorianCalendar(GMT);
-            c.setTimeInMillis(t);
-            return c;
+            return Enum.valueOf(type,s);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Values like component names are repeated across thousands of issues,
+     * so only one copy of each is kept.
+     *
+     * <p>
+     * Only use this for the fields whose values come from the short lists defined by each project,
+     * since everything that goes in here stays. Free text would fill it up.
+     */
+    private static String intern(String s) {
+        return s!=null ? VALUES.intern(s,s) : null;
+    }
+
+    private static final Interner<String> VALUES = new Interner<String>();
+
+    private static long parseDate(ThreadLocal<DateFormat> f, String text) {
+        if(text==null)
+            throw new IllegalStateException("No timestamp");
+        try {
+            return f.get().parse(text).getTime();
         } catch (ParseException e) {
             throw new IllegalStateException(e.getMessage());
         }
     }
 
+    /**
+     * Like {@link #parseDate(ThreadLocal, String)}, but defers the error to the accessor.
+     */
+    private static long parseDateLeniently(ThreadLocal<DateFormat> f, String text) {
+        if(text==null)  return NO_DATE;
+        try {
+            return f.get().parse(text).getTime();
+        } catch (ParseException e) {
+            return NO_DATE;
+        }
+    }
+
+    /**
+     * Reports a date that {@link #parseDateLeniently(ThreadLocal, String)} couldn't parse.
+     */
+    private long checkDate(long t, String what) {
+        if(t==NO_DATE)
+            throw new IllegalStateException("Issue "+id+" has a malformed timestamp for a "+what);
+        return t;
+    }
+
+    /**
+     * Gets the user of the given name, without failing on the issues that don't name one.
+     */
+    private JNUser getUserLeniently(String name) {
+        return name!=null ? root.getUser(name) : null;
+    }
+
+    private static Calendar toCalendar(long t) {
+        // when returning a calendar, set the time zone to GMT
+        // so that user applications won't be affected by the server's timezone.
+        GregorianCalendar c = new GregorianCalendar(GMT);
+        c.setTimeInMillis(t);
+        return c;
+    }
+
+    /**
+     * {@link SimpleDateFormat} isn't thread-safe, so each thread gets its own.
+     */
+    private static ThreadLocal<DateFormat> createFormat(final String pattern) {
+        return new ThreadLocal<DateFormat>() {
+            protected DateFormat initialValue() {
+                SimpleDateFormat f = new SimpleDateFormat(pattern);
+                // apparently java.net servers are in PST,
+                // and when they send time stamps they send local time
+                f.setTimeZone(PST);
+                return f;
+            }
+        };
+    }
+
+    private static final TimeZone PST = TimeZone.getTimeZone("PST");
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+    private static final ThreadLocal<DateFormat> LAST_MODIFIED_FORMAT = createFormat("yyyyMMddHHmmss");
+    private static final ThreadLocal<DateFormat> CREATION_DATE_FORMAT = createFormat("yyyy-MM-dd HH:mm:ss");
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
     /**
      * Update the issue by just posting a comment.
      */
@@ -501,22 +748,83 @@ public final class JNIssue extends JNObject {
         Map<Integer,JNIssue> r = new TreeMap<Integer, JNIssue>();
 
         for( Element issue : (List<Element>)doc.getRootElement().elements("issue") ) {
-            // make sure that the issue id is correct
-            int id = Integer.parseInt(issue.elementTextTrim("issue_id"));
-            String status = issue.attributeValue("status_code");
-            if(status.equals("404"))
-                continue;   // not found
-            if(!status.equals("200"))
-                throw new ProcessingException("bad status code for "+id+" : "+issue.attributeValue("status_message"));
-            r.put(id,project.getIssueTracker().getOrCreate(id,issue));
+            JNIssue i = create(project,issue,false);
+            if(i!=null)
+                r.put(i.getId(),i);
         }
         return r;
     }
 
+    /**
+     * Gets the {@link JNIssue} for an <tt>issue</tt> element in the XML from IssueZilla.
+     *
+     * @param refresh
+     *      true to replace the issue that the tracker already has, if any.
+     *      Otherwise the one already there is returned.
+     * @return
+     *      null if the element says the issue doesn't exist.
+     */
+    private static JNIssue create(JNProject project, Element issue, boolean refresh) throws ProcessingException {
+        // make sure that the issue id is correct
+        int id = Integer.parseInt(issue.elementTextTrim("issue_id"));
+        String status = issue.attributeValue("status_code");
+        if(status.equals("404"))
+            return null;    // not found
+        if(!status.equals("200"))
+            throw new ProcessingException("bad status code for "+id+" : "+issue.attributeValue("status_message"));
+        if(refresh)
+            return project.getIssueTracker().refresh(id,issue);
+        return project.getIssueTracker().getOrCreate(id,issue);
+    }
+
+    /**
+     * Streams the issues in the XML from IssueZilla to the visitor, one at a time.
+     */
+    private static void stream(final JNProject project, final String url, final boolean refresh, final JNIssueTracker.Visitor visitor) throws ProcessingException {
+        new Scraper<Void>("fetching the details of the issues "+url) {
+            public Void scrape() throws IOException, SAXException, ProcessingException, ParseException {
+                project.streamXML(url,"/issuezilla/issue",new HtmlExtractor.Handler() {
+                    public void onMatch(Element issue) throws ProcessingException {
+                        JNIssue i = create(project,issue,refresh);
+                        if(i!=null)
+                            visitor.visit(i);
+                    }
+                });
+                return null;
+            }
+        }.run();
+    }
+
+    static Map<Integer,JNIssue> bulkCreate(JNProject project, List<Document> docs) throws ProcessingException {
+        Map<Integer,JNIssue> r = new TreeMap<Integer, JNIssue>();
+        for (Document doc : docs)
+            r.putAll(bulkCreate(project,doc));
+        return r;
+    }
+
     /**
      * Fetchs the XML for all the specified issues.
+     *
+     * <p>
+     * The IDs are split into requests of the size that {@link JNIssueTracker#getBatchSizer() the tracker}
+     * finds appropriate. When a request fails with an I/O error, including time outs and truncated responses,
+     * the IDs in it are split in half and tried again, until it's down to a single issue.
+     *
+     * @return
+     *      one document for each request made, in the order of the IDs.
      */
-    static Document bulkFetch(final JNProject project, List<Integer> ids) throws ProcessingException {
+    static List<Document> bulkFetch(JNProject project, List<Integer> ids) throws ProcessingException {
+        BatchSizer sizer = project.getIssueTracker().getBatchSizer();
+        List<Document> r = new ArrayList<Document>();
+        for( int i=0; i<ids.size(); ) {
+            int n = Math.min(sizer.getSize(),ids.size()-i);
+            bulkFetch(project,sizer,ids.subList(i,i+n),r);
+            i += n;
+        }
+        return r;
+    }
+
+    private static void bulkFetch(final JNProject project, BatchSizer sizer, List<Integer> ids, List<Document> r) throws ProcessingException {
         StringBuffer buf = new StringBuffer();
         for( int i : ids ) {
             if(buf.length()>0)
@@ -526,40 +834,58 @@ public final class JNIssue extends JNObject {
 
         final String idList = buf.toString();
 
-        return new Scraper<Document>("fetching the details of the issue "+idList) {
-            public Document scrape() throws IOException, SAXException, ProcessingException {
-                WebResponse rsp = project.goTo(project.getURL()+"issues/"+ XML_CGI +"?include_empty_issues=false&include_attachments=false&id="+idList);
-                return new DOMReader().read(rsp.getDOM());
-            }
-        }.run();
+        long start = System.nanoTime();
+        PageFetcher.SizedDocument doc;
+        try {
+            doc = new Scraper<PageFetcher.SizedDocument>("fetching the details of the issue "+idList) {
+                public PageFetcher.SizedDocument scrape() throws IOException, SAXException, ProcessingException {
+                    return project.fetchSizedXML(project.getURL()+"issues/"+ XML_CGI +"?include_empty_issues=false&include_attachments=false&id="+idList);
+                }
+            }.run();
+        } catch (ProcessingException e) {
+            // errors reported by the server, like access denied, won't go away by asking for less
+            if(ids.size()==1 || !(e.getCause() instanceof IOException || e.getCause() instanceof SAXException))
+                throw e;
+            sizer.failed(ids.size());
+            LOGGER.log(Level.FINE,"Retrying "+ids.size()+" issues in two halves",e);
+            int half = ids.size()/2;
+            bulkFetch(project,sizer,ids.subList(0,half),r);
+            bulkFetch(project,sizer,ids.subList(half,ids.size()),r);
+            return;
+        }
+
+        sizer.succeeded(ids.size(),doc.document.getRootElement().elements("issue").size(),doc.size,System.nanoTime()-start);
+        r.add(doc.document);
     }
 
     /**
-     * Fetches the XML for issues updated during the specified time span.
+     * Streams the issues updated during the specified time span.
      * See https://jaxb.dev.java.net/issues/xmlupdate.cgi
      */
-    static Document bulkUpdateFetch(final JNProject project,final String queryParam) throws ProcessingException {
-        return new Scraper<Document>("fetching the details of the issue xmlupdate.cgi "+queryParam) {
-            public Document scrape() throws IOException, SAXException, ProcessingException {
-                WebResponse rsp = project.goTo(project.getURL()+"issues/xmlupdate.cgi?"+queryParam);
-                return new DOMReader().read(rsp.getDOM());
-            }
-        }.run();
+    static void bulkUpdateStream(JNProject project, String queryParam, JNIssueTracker.Visitor visitor) throws ProcessingException {
+        bulkUpdateStream(project,queryParam,false,visitor);
     }
 
-     /**
-     * Fetches the XML for issues by running stored query, runs default query if the
-      * queryName parameter is null
+    /**
+     * Streams the issues updated during the specified time span.
+     *
+     * @param refresh
+     *      true to replace the issues that the tracker already has, so that the visitor sees the updates.
      */
-    static Document bulkQueryFetch(final JNProject project,final String queryName) throws ProcessingException {
-        return new Scraper<Document>("fetching the details of the issue buglist.cgi "+queryName) {
-            public Document scrape() throws IOException, SAXException, ProcessingException {
-                String query = (queryName == null ? "runuserdefault" : "runnamed&namedcmd="+queryName);
-                WebResponse rsp = project.goTo(project.getURL()+"issues/buglist.cgi?&cmdtype="+query+"&format=xml");
-                return new DOMReader().read(rsp.getDOM());
-            }
-        }.run();
+    static void bulkUpdateStream(JNProject project, String queryParam, boolean refresh, JNIssueTracker.Visitor visitor) throws ProcessingException {
+        stream(project,project.getURL()+"issues/xmlupdate.cgi?"+queryParam,refresh,visitor);
+    }
+
+    /**
+     * Streams the issues found by running stored query, or the default query if the
+     * queryName parameter is null
+     */
+    static void bulkQueryStream(JNProject project, String queryName, JNIssueTracker.Visitor visitor) throws ProcessingException {
+        String query = (queryName == null ? "runuserdefault" : "runnamed&namedcmd="+queryName);
+        stream(project,project.getURL()+"issues/buglist.cgi?&cmdtype="+query+"&format=xml",false,visitor);
     }
 
     /*package*/ static final String XML_CGI = System.getProperty("java.net.xml.cgi","xml.cgi");
+
+    private static final Logger LOGGER = Logger.getLogger(JNIssue.class.getName());
 }
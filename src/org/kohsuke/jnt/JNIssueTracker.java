@@ -1,6 +1,5 @@
 package org.kohsuke.jnt;
 
-import com.meterware.httpunit.WebResponse;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
@@ -10,6 +9,7 @@ import org.xml.sax.SAXException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -36,6 +36,8 @@ public final class JNIssueTracker extends JNObject {
      */
     private final Map<Integer,JNIssue> issues = new WeakHashMap<Integer, JNIssue>();
 
+    private final BatchSizer sizer = new BatchSizer(BULK_SIZE);
+
     /**
      * Lazily parsed list of components, by their {@link JNIssueComponent#getName() names}.
      */
@@ -65,12 +67,35 @@ public final class JNIssueTracker extends JNObject {
      * Gets the issue of the specified id.
      *
      * For the performance reason, if you access multiple issues, it will be faster
-     * to use {@link #get(int...)}
+     * to use {@link #get(int...)}, or {@link #batch()} if the issues are looked up
+     * from different places.
      */
     public JNIssue get(int id) throws ProcessingException {
         return getOrCreate(id,null);
     }
 
+    /**
+     * Starts a new {@link IssueBatch}, which lets you request issues one by one,
+     * yet fetch them in bulk.
+     */
+    public IssueBatch batch() {
+        return new IssueBatch(this);
+    }
+
+    /**
+     * Gets the project that this issue tracker belongs to.
+     */
+    public JNProject getProject() {
+        return project;
+    }
+
+    /**
+     * Gets the issue only if it's already loaded.
+     */
+    /*package*/ JNIssue getIfCached(int id) {
+        return issues.get(id);
+    }
+
     final JNIssue getOrCreate(int id,Element rawData) throws ProcessingException {
         JNIssue r = issues.get(id);
         if(r==null) {
@@ -80,6 +105,15 @@ public final class JNIssueTracker extends JNObject {
         return r;
     }
 
+    /**
+     * Replaces the cached issue with the given newer data.
+     */
+    /*package*/ JNIssue refresh(int id, Element rawData) throws ProcessingException {
+        JNIssue r = new JNIssue(project,id,rawData);
+        issues.put(id,r);
+        return r;
+    }
+
     /**
      * Gets multiple issues at once.
      *
@@ -117,19 +151,83 @@ public final class JNIssueTracker extends JNObject {
 
     /**
      * Gets all the issues in this issue tracker.
+     *
+     * <p>
+     * The issues are fetched with a few concurrent requests, in the {@link RequestPriority#BULK} lane.
+     * Gaps in the issue IDs are tolerated, up to 1000 IDs.
      */
     public Map<Integer,JNIssue> getAll() throws ProcessingException {
-        Map<Integer,JNIssue> allIssues = new TreeMap<Integer,JNIssue>();
+        return getAll(IssueScanner.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Gets all the issues in this issue tracker, with the given number of concurrent requests.
+     *
+     * @see #getAll()
+     */
+    public Map<Integer,JNIssue> getAll(int parallelism) throws ProcessingException {
+        Collector c = new Collector();
+        visitAll(parallelism,c);
+        return c.issues;
+    }
+
+    /**
+     * Receives issues one by one, so that the issues that are already looked at can be garbage collected
+     * while the rest are still being fetched.
+     */
+    public interface Visitor {
+        void visit(JNIssue issue) throws ProcessingException;
+    }
+
+    /**
+     * Puts the visited issues into a map.
+     */
+    private static final class Collector implements Visitor {
+        private final Map<Integer,JNIssue> issues = new TreeMap<Integer,JNIssue>();
+
+        public void visit(JNIssue issue) {
+            issues.put(issue.getId(),issue);
+        }
+    }
 
-        for( int i=0; ; i+= BULK_SIZE) {
-            Map<Integer,JNIssue> batch = get(createRange(i, i + BULK_SIZE));
-            allIssues.putAll(batch);
-            if(batch.isEmpty())
-                return allIssues;
+    /**
+     * Visits all the issues in this issue tracker, just like {@link #getAll()} but without keeping them all in memory.
+     * Only a few batches of issues are held at a time.
+     *
+     * <p>
+     * The issues are visited in no particular order, but always from the calling thread.
+     */
+    public void visitAll(Visitor visitor) throws ProcessingException {
+        visitAll(IssueScanner.DEFAULT_PARALLELISM,visitor);
+    }
+
+    private void visitAll(int parallelism, final Visitor visitor) throws ProcessingException {
+        RequestPriority old = RequestPriority.BULK.makeCurrent();
+        try {
+            new IssueScanner(project,parallelism).scan(new IssueScanner.Sink() {
+                public int accept(Document doc) throws ProcessingException {
+                    Map<Integer,JNIssue> batch = JNIssue.bulkCreate(project,doc);
+                    for (JNIssue i : batch.values())
+                        visitor.visit(i);
+                    return batch.size();
+                }
+            });
+        } finally {
+            old.makeCurrent();
         }
     }
 
-    private static final int BULK_SIZE = 100;
+    /**
+     * Sizes the requests to xml.cgi for this tracker.
+     */
+    /*package*/ BatchSizer getBatchSizer() {
+        return sizer;
+    }
+
+    /**
+     * Initial number of issues fetched in one request, until {@link BatchSizer} learns better.
+     */
+    /*package*/ static final int BULK_SIZE = 100;
 
     private int[] createRange(int start,int end) {
         int[] ids = new int[end-start];
@@ -152,7 +250,14 @@ public final class JNIssueTracker extends JNObject {
         }
     }
 
-    private static final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd%20HH:mm:ss");
+    /**
+     * {@link SimpleDateFormat} isn't thread-safe, so each thread gets its own.
+     */
+    private static final ThreadLocal<DateFormat> dateFormat = new ThreadLocal<DateFormat>() {
+        protected DateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd%20HH:mm:ss");
+        }
+    };
 
     /**
      * Gets all the issues updated during the specified time span.
@@ -170,25 +275,47 @@ public final class JNIssueTracker extends JNObject {
     }
 
     public Map<Integer,JNIssue> getUpdatedIssues(Date start,Date end) throws ProcessingException {
-        return JNIssue.bulkCreate(project,JNIssue.bulkUpdateFetch(project,
-                "include_attachments=false&ts="+dateFormat.format(start)+"&ts_end="+dateFormat.format(end)));
+        Collector c = new Collector();
+        visitUpdatedIssues(start,end,c);
+        return c.issues;
     }
 
     /**
      * Gets all the issues updated since the given time stamp.
      */
     public Map<Integer,JNIssue> getUpdatedIssues(Date start) throws ProcessingException {
-        // if the time span is too long, fetch them in a group to avoid facing OutOfMemoryError
+        Collector c = new Collector();
+        visitUpdatedIssues(start,c);
+        return c.issues;
+    }
+
+    /**
+     * Visits all the issues updated during the specified time span, in the order the server returns them.
+     *
+     * <p>
+     * The response is parsed as it arrives, and each issue is discarded from the parser
+     * once it's visited, so the memory use doesn't grow with the number of issues.
+     */
+    public void visitUpdatedIssues(Date start, Date end, Visitor visitor) throws ProcessingException {
+        DateFormat f = dateFormat.get();
+        JNIssue.bulkUpdateStream(project,
+                "include_attachments=false&ts="+f.format(start)+"&ts_end="+f.format(end),visitor);
+    }
+
+    /**
+     * Visits all the issues updated since the given time stamp.
+     * An issue updated during the visit may be visited twice.
+     */
+    public void visitUpdatedIssues(Date start, Visitor visitor) throws ProcessingException {
+        // the time span is still split, so that the server doesn't have to produce one huge response
         long sec = 1000;
         long min = 60*sec;
         long hour = 60*min;
         long day = 24*hour;
         long month = 30*day;
 
-        Map<Integer,JNIssue> r = new TreeMap<Integer, JNIssue>();
         for( long t=start.getTime(); t<System.currentTimeMillis(); t+=month)
-            r.putAll(getUpdatedIssues(new Date(t),new Date(t+month)));
-        return r;
+            visitUpdatedIssues(new Date(t),new Date(t+month),visitor);
     }
 
     /**
@@ -202,8 +329,8 @@ public final class JNIssueTracker extends JNObject {
             // fetch now
             rawMetadata = new Scraper<Element>("fetching the metadata info") {
                 public Element scrape() throws IOException, SAXException, ProcessingException {
-                    WebResponse rsp = project.goTo(project.getURL() + "issues/"+JNIssue.XML_CGI+"?metadata=xml");
-                    return Util.getDom4j(rsp).getRootElement().element("HEAD").element("ISSUEZILLA_METADATA");
+                    Document dom = project.fetch(project.getURL() + "issues/"+JNIssue.XML_CGI+"?metadata=xml");
+                    return dom.getRootElement().element("HEAD").element("ISSUEZILLA_METADATA");
                 }
             }.run();
 
@@ -327,7 +454,19 @@ public final class JNIssueTracker extends JNObject {
      * Runs the requested stored query
      */
     public Map<Integer,JNIssue> getIssuesByQuery(String queryName) throws ProcessingException {
-        return JNIssue.bulkCreate(project,JNIssue.bulkQueryFetch(project,queryName));
+        Collector c = new Collector();
+        visitIssuesByQuery(queryName,c);
+        return c.issues;
+    }
+
+    /**
+     * Runs the requested stored query, and visits the issues as they are parsed.
+     *
+     * @param queryName
+     *      null to run the default query.
+     */
+    public void visitIssuesByQuery(String queryName, Visitor visitor) throws ProcessingException {
+        JNIssue.bulkQueryStream(project,queryName,visitor);
     }
 
     /**
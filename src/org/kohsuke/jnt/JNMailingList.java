@@ -34,10 +34,10 @@ public final class JNMailingList extends JNObject {
     private Integer totalMessages;
 
     /**
-     * Subscribers as {@link String}s. Lazily parsed.
-     * When non-null, eachc {@link List} is unmodifiable.
+     * Subscribers as {@link String}s, by {@link SubscriptionMode#index}. Lazily parsed.
+     * Each {@link List} is unmodifiable.
      */
-    private final List<String>[] subscribers = new List[SubscriptionMode.values().length];
+    private final Cached<List<String>>[] subscribers = new Cached[SubscriptionMode.values().length];
 
     /**
      * The number of messages posted per month.
@@ -62,6 +62,13 @@ public final class JNMailingList extends JNObject {
         super(project);
         this.project = project;
         this.name = name;
+        for (final SubscriptionMode mode : SubscriptionMode.values()) {
+            subscribers[mode.index] = new Cached<List<String>>(root) {
+                protected List<String> load() throws ProcessingException {
+                    return parseSubscribers(mode);
+                }
+            };
+        }
     }
 
     /**
@@ -129,9 +136,7 @@ public final class JNMailingList extends JNObject {
      *      read-only non-null (but possibly empty) list.
      */
     public List<String> getSubscribers( SubscriptionMode mode ) throws ProcessingException {
-        if(subscribers[mode.index]==null)
-            parseSubscribers(mode);
-        return subscribers[mode.index];
+        return subscribers[mode.index].get();
     }
 
     /**
@@ -156,6 +161,7 @@ public final class JNMailingList extends JNObject {
                     form.setParameter("subtype",mode.getNameAsWord());
 
                     checkError(form.submit(sb));
+                    subscribers[mode.index].invalidate();
                     return null;
                 }
 
@@ -184,7 +190,7 @@ public final class JNMailingList extends JNObject {
      * Convenience method to invoke {@link #massSubscribe(Collection,SubscriptionMode,ProgressCallback)}
      */
     public int massSubscribe(String[] addresses, SubscriptionMode mode, ProgressCallback callback ) throws ProcessingException {
-        return doMassSubscribe(Arrays.asList(addresses), mode, callback);
+        return massSubscribe(Arrays.asList(addresses), mode, callback);
     }
 
     /**
@@ -201,7 +207,12 @@ public final class JNMailingList extends JNObject {
      *      If not null, this interface receives progress indication.
      */
     public int massSubscribe(Collection<String> addresses, SubscriptionMode mode, ProgressCallback callback ) throws ProcessingException {
-        return doMassSubscribe(addresses, mode, callback);
+        RequestPriority old = RequestPriority.BULK.makeCurrent();
+        try {
+            return doMassSubscribe(addresses, mode, callback);
+        } finally {
+            old.makeCurrent();
+        }
     }
 
     /**
@@ -228,7 +239,12 @@ public final class JNMailingList extends JNObject {
      *      If not null, this interface receives progress indication.
      */
     public int massUnsubscribe(Collection<String> addresses, SubscriptionMode mode, ProgressCallback callback ) throws ProcessingException {
-        return doMassUnsubscribe(addresses,mode);
+        RequestPriority old = RequestPriority.BULK.makeCurrent();
+        try {
+            return doMassUnsubscribe(addresses,mode);
+        } finally {
+            old.makeCurrent();
+        }
     }
 
     /**
@@ -397,9 +413,6 @@ public final class JNMailingList extends JNObject {
 
 
     private int doMassSubscribe2(final Collection<String> addresses, final SubscriptionMode mode) throws ProcessingException {
-        // we are going to change this
-        subscribers[mode.index] = null;
-
         return new Scraper<Integer>("Unable to mass-subscribe") {
             protected Integer scrape() throws IOException, SAXException, ProcessingException {
                 WebForm form = getListMemberForm(mode);
@@ -417,6 +430,7 @@ public final class JNMailingList extends JNObject {
 
                 // check the response
                 WebResponse r = checkError(form.submit(subscribeBt));
+                subscribers[mode.index].invalidate();
                 String text = r.getText();
 
                 int start = text.indexOf("<p>New members subscribed:");
@@ -446,9 +460,6 @@ public final class JNMailingList extends JNObject {
     }
 
     private int doMassUnsubscribe(final Collection<String> addresses, final SubscriptionMode mode) throws ProcessingException {
-        // we are going to change this
-        subscribers[mode.index] = null;
-
         Integer r = (Integer)new Scraper("Unable to mass-unsubscribe") {
             protected Object scrape() throws IOException, SAXException, ProcessingException {
                 WebForm form = getListMemberForm(mode);
@@ -465,6 +476,7 @@ public final class JNMailingList extends JNObject {
                     throw new ProcessingException("Error: submit button not found! This is probably the wrong page...");
 
                 WebResponse r = checkError(form.submit(subscribeBt));
+                subscribers[mode.index].invalidate();
                 String text = r.getText();
 
                 int start = text.indexOf("<p>Members unsubscribed:");
@@ -485,12 +497,11 @@ public final class JNMailingList extends JNObject {
     /**
      * Parses all the subscribers.
      */
-    private void parseSubscribers(final SubscriptionMode mode) throws ProcessingException {
-        new Scraper("Unable to parse subscriber info") {
-            protected Object scrape() throws IOException, SAXException, ProcessingException {
+    private List<String> parseSubscribers(final SubscriptionMode mode) throws ProcessingException {
+        return new Scraper<List<String>>("Unable to parse subscriber info") {
+            protected List<String> scrape() throws IOException, SAXException, ProcessingException {
                 WebForm form = getListMemberForm(mode);
-                subscribers[mode.index] = Collections.unmodifiableList(Arrays.asList(form.getOptions("unsubscribeList")));
-                return null;
+                return Collections.unmodifiableList(Arrays.asList(form.getOptions("unsubscribeList")));
             }
         }.run();
     }
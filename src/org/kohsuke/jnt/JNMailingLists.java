@@ -2,8 +2,9 @@ package org.kohsuke.jnt;
 
 import com.meterware.httpunit.HttpException;
 import com.meterware.httpunit.WebForm;
-import com.meterware.httpunit.WebLink;
 import com.meterware.httpunit.WebResponse;
+import org.dom4j.Document;
+import org.dom4j.Element;
 import org.w3c.dom.DOMException;
 import org.xml.sax.SAXException;
 
@@ -25,7 +26,11 @@ public final class JNMailingLists extends JNObject {
     /**
      * List of {@link JNMailingList}. Lazily parsed.
      */
-    private List<JNMailingList> lists;
+    private final Cached<List<JNMailingList>> lists = new Cached<List<JNMailingList>>(root) {
+        protected List<JNMailingList> load() throws ProcessingException {
+            return Collections.unmodifiableList(parse());
+        }
+    };
 
     protected JNMailingLists(JNProject project) {
         super(project);
@@ -43,8 +48,7 @@ public final class JNMailingLists extends JNObject {
      *      can be empty but never be null. read-only.
      */
     public List<JNMailingList> getLists() throws ProcessingException {
-        if(lists==null)     parse();
-        return Collections.unmodifiableList(lists);
+        return lists.get();
     }
 
     /**
@@ -57,37 +61,30 @@ public final class JNMailingLists extends JNObject {
      *      null if no such list is found
      */
     public JNMailingList get(String name) throws ProcessingException {
-        if(lists==null)
-            parse();
-        for (JNMailingList f : lists) {
+        for (JNMailingList f : lists.get()) {
             if (f.getName().equals(name))
                 return f;
         }
         return null;
     }
 
-    private void parse() throws ProcessingException {
-        lists = new ArrayList<JNMailingList>();
+    private List<JNMailingList> parse() throws ProcessingException {
+        final List<JNMailingList> lists = new ArrayList<JNMailingList>();
 
-        try {
-            WebResponse response = goTo(project._getURL()+"/servlets/ProjectMailingListList");
+        return new Scraper<List<JNMailingList>>("Unable to parse the mailing list page") {
+            protected List<JNMailingList> scrape() throws IOException, SAXException, ProcessingException {
+                Document dom = fetch(project._getURL()+"/servlets/ProjectMailingListList");
 
-            for( WebLink link : response.getLinks() ) {
-                String linkTxt = link.getURLString();
-                if (linkTxt.startsWith(project._getURL() + "/servlets/SummarizeList?listName=")) {
-                    String listName = linkTxt.substring(linkTxt.lastIndexOf('=')+1, linkTxt.length());
-                    lists.add(new JNMailingList(project,listName));
+                for( Element a : Selector.of("//A[@href]").<Element>selectNodes(dom) ) {
+                    String linkTxt = a.attributeValue("href");
+                    if (linkTxt.startsWith(project._getURL() + "/servlets/SummarizeList?listName=")) {
+                        String listName = linkTxt.substring(linkTxt.lastIndexOf('=')+1, linkTxt.length());
+                        lists.add(new JNMailingList(project,listName));
+                    }
                 }
+                return lists;
             }
-        } catch( SAXException e ) {
-            throw new ProcessingException(e);
-        } catch( IOException e ) {
-            throw new ProcessingException(e);
-        } catch( DOMException e ) {
-            throw new ProcessingException(e);
-        } catch(HttpException e) {
-            throw new ProcessingException(e);
-        }
+        }.run();
     }
 
     /**
@@ -162,10 +159,8 @@ public final class JNMailingLists extends JNObject {
                 throw new ProcessingException("Unable to create list: missing required information.");
             }
 
-            JNMailingList list = new JNMailingList(project,listName);
-            if(lists!=null)
-                lists.add(list);
-            return list;
+            reset();
+            return new JNMailingList(project,listName);
         } catch( SAXException e ) {
             throw new ProcessingException(e);
         } catch( IOException e ) {
@@ -181,6 +176,6 @@ public final class JNMailingLists extends JNObject {
      * Resets the current list of {@link JNMailingList}.
      */
     /*package*/ void reset() {
-        lists = null;
+        lists.invalidate();
     }
 }
@@ -1,19 +1,22 @@
 package org.kohsuke.jnt;
 
 import com.meterware.httpunit.HTMLSegment;
-import com.meterware.httpunit.HttpException;
 import com.meterware.httpunit.SubmitButton;
 import com.meterware.httpunit.TableCell;
 import com.meterware.httpunit.WebForm;
-import com.meterware.httpunit.WebLink;
 import com.meterware.httpunit.WebResponse;
 import com.meterware.httpunit.WebTable;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Element;
+import org.dom4j.Element;
+import org.dom4j.Text;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -32,101 +35,139 @@ public class JNMembership extends JNObject {
     private final JNProject project;
 
     /**
-     * Lazily created. {@link JNUser} to sets of {@link JNRole}s in this project.
-     * @see #getMembers()
+     * Lazily parsed membership information.
      */
-    private Map<JNUser,Set<JNRole>> members;
-
-    /**
-     * Lazily created.
-     * {@link JNRole} to sets of {@link JNUser}s that hae that role in this project.
-     */
-    private Map<JNRole,Set<JNUser>> roles;
+    private final Cached<Info> info = new Cached<Info>(root) {
+        protected Info load() throws ProcessingException {
+            return parseMembershipInfo();
+        }
+    };
+
+    private static final class Info {
+        /**
+         * {@link JNUser} to sets of {@link JNRole}s in this project.
+         * @see JNMembership#getMembers()
+         */
+        private final Map<JNUser,Set<JNRole>> members = new TreeMap<JNUser,Set<JNRole>>();
+
+        /**
+         * {@link JNRole} to sets of {@link JNUser}s that hae that role in this project.
+         */
+        private final Map<JNRole,Set<JNUser>> roles = new TreeMap<JNRole,Set<JNUser>>();
+    }
 
     protected JNMembership(JNProject project) {
         super(project);
         this.project = project;
     }
 
-    private void parseMembershipInfo() throws ProcessingException {
+    private Info parseMembershipInfo() throws ProcessingException {
         // load all information that is on the membership pages
 
-        members = new TreeMap<JNUser,Set<JNRole>>();
-        roles = new TreeMap<JNRole,Set<JNUser>>();
-
-        try {
-            WebResponse response = goTo(project._getURL()+"/servlets/ProjectMemberList");
-
-            while(true) {
-                WebTable users = response.getTableStartingWithPrefix("User");
-
-                if (users == null) {
-                    // there's no member table.
-                    // TODO: isn't that an error?
-                    return;
-                }
-
-                users.purgeEmptyCells();
-
-                int numRows = users.getRowCount();
-
-                // we start from row 1, since row 0 is the header row.
-                // and we ignore the last row, since it is the submit button
-
-                // TODO: treat 2 special cases
-                //       1) when the user has no permission on the page.
-                //          In this case, the submit button does not shows. The code
-                //          will work, but will not count one user in each page.
-                //       2) in java-net project, theres a "User Group" section on
-                //          the top of this table. This will work, but will give
-                //          incorrect results, since it will count the "User" header
-                //          and the groups as members.
-
-                for (int r = 1; r < numRows; r++) {
-                    JNUser user = root.getUser(users.getCellAsText(r,0).trim());
-
-                    // when there are more then one role for a single user, the
-                    // roleList are separated by commas. This is new layout
-                    String cell = users.getCellAsText(r, 2);                    
-                    // There are some java.net projects, such as open-esb, where
-                    // the role lists are not comma-delimited, but are instead
-                    // delimited by \n chars. For consistency, replace \n with 
-                    // the comma delimiter
-                    cell = cell.replace('\n', ',');                    
-                    StringTokenizer roleList = new StringTokenizer(cell,",");
-                    Set<JNRole> ra = new TreeSet<JNRole>();
-                    while(roleList.hasMoreTokens()) {
-                        String roleName = roleList.nextToken().trim();
-                        if(roleName.length()==0)    continue;
-                        JNRole role = root.getRole(roleName);
-                        ra.add(role);
-
-                        Set<JNUser> l = roles.get(role);
-                        if(l==null) {
-                            roles.put(role,l=new TreeSet<JNUser>());
+        final Info result = new Info();
+        final Map<JNUser,Set<JNRole>> members = result.members;
+        final Map<JNRole,Set<JNUser>> roles = result.roles;
+
+        return new Scraper<Info>("Unable to parse the member list of "+project.getName()) {
+            protected Info scrape() throws IOException, SAXException, ProcessingException, ParseException {
+                String url = project._getURL()+"/servlets/ProjectMemberList";
+
+                while(url!=null) {
+                    final String pageUrl = url;
+                    final String[] nextPage = new String[1];
+
+                    HtmlExtractor x = new HtmlExtractor();
+                    x.add(Selector.of("//TR"),new HtmlExtractor.Handler() {
+                        /**
+                         * The member table is the first table whose first cell starts with "User".
+                         * When found, this points to the (attribute-only) TABLE element.
+                         */
+                        Element memberTable;
+                        Element lastTable;
+
+                        public void onMatch(Element tr) throws ProcessingException {
+                            Element table = tr.getParent();
+                            boolean firstRow = table!=lastTable;
+                            lastTable = table;
+
+                            List<Element> tds = nonEmptyCells(tr);
+                            if(memberTable==null) {
+                                // row 0 is the header row.
+                                if(firstRow && !tds.isEmpty() && tds.get(0).getStringValue().trim().startsWith("User"))
+                                    memberTable = table;
+                                return;
+                            }
+                            if(table!=memberTable)
+                                return;
+
+                            // TODO: treat 2 special cases
+                            //       1) when the user has no permission on the page.
+                            //          In this case, the submit button does not shows.
+                            //       2) in java-net project, theres a "User Group" section on
+                            //          the top of this table. This will work, but will give
+                            //          incorrect results, since it will count the "User" header
+                            //          and the groups as members.
+                            // the row for the submit button doesn't have the role column.
+                            if(tds.size()<3)
+                                return;
+                            String userName = tds.get(0).getStringValue().trim();
+                            if(userName.length()==0)
+                                return;
+
+                            JNUser user = root.getUser(userName);
+                            Set<JNRole> ra = new TreeSet<JNRole>();
+
+                            // each role is a separate text node after a check box, but
+                            // when there are more then one role for a single user in the new layout,
+                            // the role list is separated by commas. In some java.net projects,
+                            // such as open-esb, the role lists are delimited by \n chars.
+                            for( Text t : Selector.of(".//text()").<Text>selectNodes(tds.get(2)) ) {
+                                StringTokenizer roleList = new StringTokenizer(t.getText(),",\n");
+                                while(roleList.hasMoreTokens()) {
+                                    String roleName = roleList.nextToken().trim();
+                                    if(roleName.length()==0)    continue;
+                                    JNRole role = root.getRole(roleName);
+                                    ra.add(role);
+
+                                    Set<JNUser> l = roles.get(role);
+                                    if(l==null) {
+                                        roles.put(role,l=new TreeSet<JNUser>());
+                                    }
+                                    l.add(user);
+                                }
+                            }
+
+                            members.put(user,ra);
                         }
-                        l.add(user);
-                    }
 
-                    members.put(user,ra);
-                }
+                        /**
+                         * Gets the cells of the row that have some text in them, like WebTable.purgeEmptyCells() did,
+                         * so that a column with nothing but check boxes doesn't throw off the column indices.
+                         */
+                        private List<Element> nonEmptyCells(Element tr) {
+                            List<Element> r = new ArrayList<Element>();
+                            for (Element td : children(tr))
+                                if(td.getStringValue().replace('\u00A0',' ').trim().length()>0)
+                                    r.add(td);
+                            return r;
+                        }
+                    });
+                    x.add(Selector.of("//A"),new HtmlExtractor.Handler() {
+                        public void onMatch(Element a) throws MalformedURLException {
+                            String href = a.attributeValue("href");
+                            if(nextPage[0]==null && href!=null && a.getStringValue().indexOf("Next")!=-1)
+                                nextPage[0] = new URL(new URL(pageUrl),href).toExternalForm();
+                        }
+                    });
 
-                WebLink nextPage = response.getLinkWith("Next");
-                if(nextPage==null)
-                    return; // done
+                    fetch(url,x);
 
-                // continue to parse the next page
-                response = nextPage.click();
+                    // continue to parse the next page, if any
+                    url = nextPage[0];
+                }
+                return result;
             }
-        } catch( SAXException e ) {
-            throw new ProcessingException(e);
-        } catch( IOException e ) {
-            throw new ProcessingException(e);
-        } catch( DOMException e ) {
-            throw new ProcessingException(e);
-        } catch(HttpException e) {
-            throw new ProcessingException(e);
-        }
+        }.run();
     }
 
     /**
@@ -136,9 +177,7 @@ public class JNMembership extends JNObject {
      *      the set can be empty, but always non-null. The set is read-only.
      */
     public Set<JNUser> getMembers() throws ProcessingException {
-        if(members==null)
-            parseMembershipInfo();
-        return Collections.unmodifiableSet(members.keySet());
+        return Collections.unmodifiableSet(info.get().members.keySet());
     }
 
     /**
@@ -148,9 +187,7 @@ public class JNMembership extends JNObject {
      *      the set can be empty, but always non-null. The set is read-only.
      */
     public Set<JNRole> getRoles() throws ProcessingException {
-        if(roles==null)
-            parseMembershipInfo();
-        return Collections.unmodifiableSet(roles.keySet());
+        return Collections.unmodifiableSet(info.get().roles.keySet());
     }
 
     /**
@@ -164,9 +201,7 @@ public class JNMembership extends JNObject {
      *      always return a read-only non-null (but possibly empty) set.
      */
     public Set<JNRole> getRolesOf(JNUser user) throws ProcessingException {
-        if(members==null)
-            parseMembershipInfo();
-        Set<JNRole> r = members.get(user);
+        Set<JNRole> r = info.get().members.get(user);
         if(r==null)
             return Collections.EMPTY_SET;
 
@@ -180,9 +215,7 @@ public class JNMembership extends JNObject {
      *      always return a read-only non-null (but possibly empty) set.
      */
     public Set<JNUser> getUserOf(JNRole role) throws ProcessingException {
-        if(roles==null)
-            parseMembershipInfo();
-        Set<JNUser> s = roles.get(role);
+        Set<JNUser> s = info.get().roles.get(role);
         if(s==null)
             return Collections.EMPTY_SET;
 
@@ -210,6 +243,7 @@ public class JNMembership extends JNObject {
             if(submitButton==null)
                 throw new IllegalStateException("no grant role button");
             r = checkError(form.submit(submitButton));
+            info.invalidate();
 
             if( r.getURL().toExternalForm().endsWith("ProjectMemberList") )
                 return; // successful
@@ -256,6 +290,7 @@ public class JNMembership extends JNObject {
             if(submitButton==null)
                 throw new IllegalStateException("no submit button");
             r = checkError(form.submit(submitButton));
+            info.invalidate();
 
             if( r.getURL().toExternalForm().endsWith("ProjectMemberList") )
                 return; // successful
@@ -306,7 +341,7 @@ public class JNMembership extends JNObject {
                 if( !t.getCellAsText(i,2).trim().equals(roleName) ) continue;
                 
                  TableCell opCell = t.getTableCell(i,3);
-                 Element input = Util.getFirstElementChild((Element)opCell.getDOM());
+                 org.w3c.dom.Element input = Util.getFirstElementChild((org.w3c.dom.Element)opCell.getDOM());
                  if(!input.getTagName().equalsIgnoreCase("input"))
                     throw new ProcessingException("expected input tag but found "+input.getTagName());
                  
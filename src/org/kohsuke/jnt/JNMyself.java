@@ -35,22 +35,22 @@ public class JNMyself extends JNUser {
         new Scraper("failed to parse the personal info page") {
             protected Object scrape() throws IOException, SAXException, ProcessingException {
                 // obtain current user information
-                Document dom = Util.getDom4j(goTo("https://www.dev.java.net/servlets/StartPage"));
+                Document dom = fetch("https://www.dev.java.net/servlets/StartPage");
 
                 // parse my projects
                 Set<JNProject> myProjects = new HashSet<JNProject>();
                 while(true) {// repeat while we have next pages
 
-                    List<Element> projects = (List<Element>)dom.selectNodes("//DIV[@id='myprojects']//TR/TD[1]/A");
+                    List<Element> projects = Selector.of("//DIV[@id='myprojects']//TR/TD[1]/A").selectNodes(dom);
                     for (Element project : projects) {
                         myProjects.add(root.getProject(project.getText()));
                     }
 
-                    Element nextLink = (Element)dom.selectSingleNode("//DIV[@id='startpage']//P[@class='paginate']/A[text()='Next']");
+                    Element nextLink = Selector.of("//DIV[@id='startpage']//P[@class='paginate']/A[text()='Next']").selectSingleNode(dom);
                     if(nextLink==null)
                         break;
 
-                    dom = Util.getDom4j(goTo(nextLink.attributeValue("href")));
+                    dom = fetch(nextLink.attributeValue("href"));
                 }
 
                 JNMyself.this.myProjects = Collections.unmodifiableSet(myProjects);
@@ -184,25 +184,24 @@ public final class JNNewsItems extends JNObject {
             pendingApprovals = new ArrayList<JNNewsItem>();
             new Scraper("Unable to parse announcements that are pending approvals") {
                 protected Object scrape() throws IOException, SAXException, ParseException, ProcessingException {
-                    WebResponse response = goTo(project._getURL()+"/servlets/ProjectNewsApproval");
-                    Document dom = Util.getDom4j(response);
+                    Document dom = fetch(project._getURL()+"/servlets/ProjectNewsApproval");
 
                     
-                    Element table = (Element)dom.selectSingleNode("//DIV[@id='projectnewsapproval']//TABLE");
+                    Element table = Selector.of("//DIV[@id='projectnewsapproval']//TABLE").selectSingleNode(dom);
 
                     if (table== null)
                         // theres no news table, meaning there's nothing to approve.
                         return null;
 
                     // the format is subtly different from below.
-                    List rows = table.selectNodes(".//TR");
+                    List rows = Selector.of(".//TR").selectNodes(table);
 
                     // we start from row 1, since row 0 is the header row.
                     for (int r=1; r<rows.size(); r++) {
                         Element row = (Element) rows.get(r);
                         String date =  ((Element)row.elements("TD").get(1)).getTextTrim();
 
-                        Element link = (Element) row.selectSingleNode("TD[1]/A");
+                        Element link = Selector.of("TD[1]/A").selectSingleNode(row);
                         String summary = link.getText();
                         String href = link.attributeValue("href");
                         int idx = href.lastIndexOf('=')+1;
@@ -223,17 +222,16 @@ public final class JNNewsItems extends JNObject {
 
         new Scraper("Unable to parse the announcement list") {
             protected Object scrape() throws IOException, SAXException, ParseException, ProcessingException {
-                WebResponse response = goTo(project._getURL()+"/servlets/ProjectNewsList");
-                Document dom = Util.getDom4j(response);
+                Document dom = fetch(project._getURL()+"/servlets/ProjectNewsList");
 
-                Element table = (Element)dom.selectSingleNode("//FORM[@action='ProjectNewsList']/TABLE");
+                Element table = Selector.of("//FORM[@action='ProjectNewsList']/TABLE").selectSingleNode(dom);
 
                 if (table== null) {
                     // theres no news table.
                     return null;
                 }
 
-                List rows = table.selectNodes("TR");
+                List rows = Selector.of("TR").selectNodes(table);
 
                 // we start from row 1, since row 0 is the header row.
 
@@ -242,7 +240,7 @@ public final class JNNewsItems extends JNObject {
                     Element row = (Element) rows.get(r);
                     String date =  ((Element)row.elements("TD").get(0)).getTextTrim();
 
-                    Element link = (Element) row.selectSingleNode("TD[2]/A");
+                    Element link = Selector.of("TD[2]/A").selectSingleNode(row);
                     String summary = link.getText();
                     String href = link.attributeValue("href");
                     int idx = href.lastIndexOf('=')+1;
@@ -6,6 +6,7 @@ import org.dom4j.Document;
 import org.dom4j.Element;
 
 import java.io.IOException;
+import java.text.ParseException;
 import java.util.List;
 
 /**
@@ -30,9 +31,76 @@ abstract class JNObject {
 
     /**
      * Jumps to the specified page.
+     *
+     * <p>
+     * This is a GET, so it's retried according to {@link JavaNet#getRetryPolicy()}.
      */
-    protected WebResponse goTo(String url) throws IOException, SAXException, ProcessingException {
-        return checkError(root.wc.getResponse(url));
+    protected WebResponse goTo(final String url) throws IOException, SAXException, ProcessingException {
+        Cached.dependsOn(url);
+        return RetryPolicy.execute(root.getRetryPolicy(),url,new RetryPolicy.Request<WebResponse>() {
+            public WebResponse call(boolean lastAttempt) throws IOException, SAXException, ProcessingException {
+                return checkError(root.wc.getResponse(url));
+            }
+        });
+    }
+
+    /**
+     * Fetches the specified page just to scrape it.
+     *
+     * <p>
+     * Unlike {@link #goTo(String)}, this doesn't go through httpunit and doesn't
+     * change the current page, so use this only for pages that are read but
+     * not interacted with (such as clicking links or submitting forms.)
+     */
+    protected Document fetch(String url) throws IOException, SAXException, ProcessingException {
+        Cached.dependsOn(url);
+        return checkError(root.fetcher.getHTML(url));
+    }
+
+    /**
+     * Fetches the specified page just to scrape it, and streams it through the given extractor.
+     *
+     * <p>
+     * Unlike {@link #fetch(String)}, the tree of the whole page is never built,
+     * so this is preferable for pages that can get big, like member lists.
+     */
+    protected void fetch(String url, HtmlExtractor extractor) throws IOException, SAXException, ProcessingException, ParseException {
+        Cached.dependsOn(url);
+        final StringBuilder error = new StringBuilder();
+        // the caller may reuse the extractor, so don't add to it
+        HtmlExtractor x = new HtmlExtractor(extractor).add(ERROR_MESSAGE,new HtmlExtractor.Handler() {
+            public void onMatch(Element e) {
+                if(error.length()==0)
+                    error.append(e.getStringValue().trim());
+            }
+        });
+        root.fetcher.extract(url,x);
+        if(error.length()>0)
+            throw new ProcessingException(error.toString());
+    }
+
+    /**
+     * Fetches the specified XML document, such as the output from xml.cgi.
+     */
+    protected Document fetchXML(String url) throws IOException, SAXException, ProcessingException {
+        Cached.dependsOn(url);
+        return root.fetcher.getXML(url);
+    }
+
+    /**
+     * Streams the elements at the given path of the specified XML document to the handler.
+     */
+    /*package*/ final void streamXML(String url, String path, HtmlExtractor.Handler handler) throws IOException, SAXException, ProcessingException, ParseException {
+        Cached.dependsOn(url);
+        root.fetcher.streamXML(url,path,handler);
+    }
+
+    /**
+     * Fetches the specified XML document, together with the size of the response.
+     */
+    /*package*/ final PageFetcher.SizedDocument fetchSizedXML(String url) throws IOException, SAXException, ProcessingException {
+        Cached.dependsOn(url);
+        return root.fetcher.getSizedXML(url);
     }
 
     /**
@@ -42,14 +110,41 @@ abstract class JNObject {
         if(resp.getResponseCode()!=200)
             throw new ProcessingException("request failed "+resp.getResponseMessage());
 
-        Document dom = Util.getDom4j(resp);
-        org.dom4j.Node errorNode = dom.selectSingleNode("//DIV[@class='errormessage']");
+        // most responses have no error, so only parse the page when it has the marker.
+        // this is a superset of what the XPath matches, so the parse makes the final call
+        if(hasMarker(resp,ERROR_MARKER))
+            checkError(Util.getDom4j(resp));
+        return resp;
+    }
+
+    /**
+     * Checks if the parsed page contains any error message.
+     */
+    protected final Document checkError(Document dom) throws ProcessingException {
+        org.dom4j.Node errorNode = ERROR_MESSAGE.selectSingleNode(dom);
         if(errorNode!=null) {
             // this happens for example when you request "http://nosuchproject.dev.java.net/"
             throw new ProcessingException(errorNode.getStringValue().trim());
         }
+        return dom;
+    }
 
-        return resp;
+    /**
+     * Where java.net reports errors in the page.
+     */
+    private static final Selector ERROR_MESSAGE = Selector.of("//DIV[@class='errormessage']");
+
+    /**
+     * Text that always appears in the page when {@link #ERROR_MESSAGE} matches.
+     */
+    private static final String ERROR_MARKER = "errormessage";
+
+    /**
+     * Checks if the response text contains the given string, without parsing it.
+     * httpunit has already decoded the whole response, so this is a single scan over it.
+     */
+    protected static boolean hasMarker(WebResponse resp, String marker) throws IOException {
+        return resp.getText().indexOf(marker)>=0;
     }
 
     /**
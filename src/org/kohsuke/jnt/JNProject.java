@@ -38,7 +38,6 @@ public final class JNProject extends JNObject implements Comparable {
     private JNForums forums;
     private JNMailingLists mailingLists;
     private JNIssueTracker issueTracker;
-    private Boolean exists;
 
     /**
      * News item section.s
@@ -46,44 +45,50 @@ public final class JNProject extends JNObject implements Comparable {
     private JNNewsItems newsItems;
     
     /**
-     * Parent project name.
-     * Lazily retrieved by the {@link #parseProjectInfo()}method. 
+     * Information on the project index page.
+     * Lazily retrieved by the {@link #parseProjectInfo()} method.
      */
-    private String parentProject;
-    
-    /**
-     * Name of the top-level project to which this project belongs to.
-     * 
-     * <p>
-     * It will be the same as the project name if the project
-     * is top level (which means it's a community or it's a top-level
-     * project.)
-     * 
-     * Lazily retrieved by the {@link #parseProjectInfo()}method. 
-     */
-    private String topLevelName;
-    
-    /**
-     * If this project is a community, true. If not, false.
-     * 
-     * Lazily retrieved by the {@link #parseProjectInfo()}method,
-     * and until then it's null. 
-     */
-    private Boolean isCommunity;
-    
-    /**
-     * A set of {@link JNUser} objects that represent the project owners. 
-     * Lazily retrieved by the {@link #parseProjectInfo()}method. 
-     */
-    private Set<JNUser> owners;
+    private final Cached<Info> info = new Cached<Info>(root) {
+        protected Info load() throws ProcessingException {
+            return parseProjectInfo();
+        }
+    };
 
-    private Set<JNProject> subProjects;
+    private static final class Info {
+        /**
+         * Parent project name.
+         */
+        private String parentProject;
 
-    private String summmary;
-    private JNFileFolder rootFolder;
+        /**
+         * Name of the top-level project to which this project belongs to.
+         *
+         * <p>
+         * It will be the same as the project name if the project
+         * is top level (which means it's a community or it's a top-level
+         * project.)
+         */
+        private String topLevelName;
 
-    private String ownerMessage;
-    private JNVCS vcs;
+        /**
+         * If this project is a community, true. If not, false.
+         */
+        private boolean isCommunity;
+
+        /**
+         * A set of {@link JNUser} objects that represent the project owners.
+         */
+        private Set<JNUser> owners;
+
+        private Set<JNProject> subProjects;
+
+        private String summmary;
+
+        private String ownerMessage;
+        private JNVCS vcs;
+    }
+
+    private JNFileFolder rootFolder;
 
     protected JNProject(JavaNet net, String name) {
         super(net);
@@ -103,65 +108,61 @@ public final class JNProject extends JNObject implements Comparable {
     /**
      * Parse the project index page.
      */
-    private void parseProjectInfo() throws ProcessingException {
-        if(topLevelName!=null)
-            return; // already parsed.
-
-        exists = false;
+    private Info parseProjectInfo() throws ProcessingException {
+        return new Scraper<Info>("unable to parse the project page of "+projectName) {
+            protected Info scrape() throws IOException, SAXException, ProcessingException {
+                Document dom = fetch(_getURL()+'/');
+                Info info = new Info();
 
-        new Scraper("unable to parse the project page of "+projectName) {
-            protected Object scrape() throws IOException, SAXException, ProcessingException {
-                Document dom = Util.getDom4j(goTo(_getURL()+'/'));
-
-                List as = dom.selectNodes("//DIV[@id='breadcrumbs']//A");
+                List as = Selector.of("//DIV[@id='breadcrumbs']//A").selectNodes(dom);
                 if(as.size()==0)
                     throw new ProcessingException("failed to obtain the breadcrumb in "+getURL());
 
                 if(as.size()>2) {
-                    topLevelName = ((Element)as.get(1)).getTextTrim();
-                    parentProject = ((Element)as.get(as.size()-2)).getTextTrim();
+                    info.topLevelName = ((Element)as.get(1)).getTextTrim();
+                    info.parentProject = ((Element)as.get(as.size()-2)).getTextTrim();
                 } else {
-                    topLevelName = projectName;
-                    parentProject = null;
+                    info.topLevelName = projectName;
+                    info.parentProject = null;
                 }
 
-                if(( dom.selectSingleNode("//TABLE[@class='axial']/TR[normalize-space(TH)='Project group'][normalize-space(TD)='communities']")!=null ) ||
+                if(( Selector.of("//TABLE[@class='axial']/TR[normalize-space(TH)='Project group'][normalize-space(TD)='communities']").selectSingleNode(dom)!=null ) ||
                     ( projectName.equalsIgnoreCase("glassfish")) )  // hack for glassfish community
-                    isCommunity=Boolean.TRUE;
+                    info.isCommunity = true;
                 else
-                    isCommunity=Boolean.FALSE;
+                    info.isCommunity = false;
 
                 // parse summary
-                Node summaryNode = dom.selectSingleNode("//TABLE[@class='axial']/TR[TH/text()='Summary']/TD");
+                Node summaryNode = Selector.of("//TABLE[@class='axial']/TR[TH/text()='Summary']/TD").selectSingleNode(dom);
                 if(summaryNode!=null)
-                    summmary = summaryNode.getText();
+                    info.summmary = summaryNode.getText();
 
                 // parse owners
                 Set<JNUser> owners = new TreeSet<JNUser>();
-                List<Element> os = dom.selectNodes("//TABLE[@class='axial']/TR[TH/text()='Owner(s)']/TD/A");
+                List<Element> os = Selector.of("//TABLE[@class='axial']/TR[TH/text()='Owner(s)']/TD/A").selectNodes(dom);
                 for (Element o : os)
                     owners.add(root.getUser(o.getTextTrim()));
-                JNProject.this.owners = Collections.unmodifiableSet(owners);
+                info.owners = Collections.unmodifiableSet(owners);
 
                 // parse sub-projects
                 Set<JNProject> subProjects = new TreeSet<JNProject>();  
-                List<Element> sps = dom.selectNodes("//H2[text()='Subprojects']/following::*[1]/TR/TD/A");
+                List<Element> sps = Selector.of("//H2[text()='Subprojects']/following::*[1]/TR/TD/A").selectNodes(dom);
                 for (Element sp : sps)
                     subProjects.add(root.getProject(sp.getTextTrim()));
-                JNProject.this.subProjects = Collections.unmodifiableSet(subProjects);
+                info.subProjects = Collections.unmodifiableSet(subProjects);
 
                 // parse owner's message.
                 // this isn't actually too reliable, because NekoHTML changes
                 // tag names to upper cases for one thing.
-                Node node = dom.selectSingleNode("//DIV[@id='ownermessage']");
+                Node node = Selector.of("//DIV[@id='ownermessage']").selectSingleNode(dom);
                 if(node!=null) {
                     Element e = (Element)node;
-                    ownerMessage = "";
+                    String ownerMessage = "";
                     List children = e.elements();
                     // skip the first H3 which is used for a caption
                     for( int i=1; i<children.size(); i++ )
                         ownerMessage += ((Element)children.get(i)).asXML();
-                    ownerMessage = ownerMessage.substring(3,ownerMessage.length()-4);
+                    info.ownerMessage = ownerMessage.substring(3,ownerMessage.length()-4);
                 }
 
                 // is this CVS, or Subversion based?
@@ -169,13 +170,11 @@ public final class JNProject extends JNObject implements Comparable {
                 if(vcslink==null)
                     throw new ProcessingException("Version control link not found");
                 if(vcslink.getText().indexOf("CVS")>=0)
-                    vcs = JNVCS.CVS;
+                    info.vcs = JNVCS.CVS;
                 else
-                    vcs = JNVCS.SVN;
+                    info.vcs = JNVCS.SVN;
 
-                exists = true;
-
-                return null;
+                return info;
             }
         }.run();
     }
@@ -197,8 +196,7 @@ public final class JNProject extends JNObject implements Comparable {
      *      always non-null.
      */
     public JNVCS getVersionControl() throws ProcessingException {
-        parseProjectInfo();
-        return vcs;
+        return info.get().vcs;
     }
 
     /**
@@ -209,8 +207,7 @@ public final class JNProject extends JNObject implements Comparable {
      *      always non-null.
      */
     public String getSummary() throws ProcessingException {
-        parseProjectInfo();
-        return summmary;
+        return info.get().summmary;
     }
 
     /**
@@ -226,8 +223,7 @@ public final class JNProject extends JNObject implements Comparable {
      * @see #getOwnerMessage2()
      */
     public String getOwnerMessage() throws ProcessingException {
-        parseProjectInfo();
-        return ownerMessage;
+        return info.get().ownerMessage;
     }
 
     /**
@@ -278,6 +274,7 @@ public final class JNProject extends JNObject implements Comparable {
                 form.setParameter("status",msg);
 
                 checkError(form.submit());
+                root.invalidateCache(_getURL()+'/');
 
                 return old;
             }
@@ -292,7 +289,7 @@ public final class JNProject extends JNObject implements Comparable {
      *      all communities are top-level projects.
      */
     public JNProject getParent() throws ProcessingException {
-        parseProjectInfo();
+        String parentProject = info.get().parentProject;
         if( parentProject==null )   return null;
         return root.getProject(parentProject);
     }
@@ -328,7 +325,13 @@ public final class JNProject extends JNObject implements Comparable {
                 if(!found)
                     throw new ProcessingException("No such projcet " + parentName);
 
+                // the old and the new parent pages list this project as a sub-project
+                Info old = info.peek();
                 checkError(form.submit());
+                root.invalidateCache(_getURL()+'/');
+                root.invalidateCache(newParent._getURL()+'/');
+                if(old!=null && old.parentProject!=null)
+                    root.invalidateCache(root.getProject(old.parentProject)._getURL()+'/');
 
                 return null;
             }
@@ -347,8 +350,7 @@ public final class JNProject extends JNObject implements Comparable {
      *      this method returns <tt>null</tt>.
      */
     public JNProject getOwnerCommunity() throws ProcessingException {
-        parseProjectInfo();
-        JNProject p = root.getProject(topLevelName);
+        JNProject p = root.getProject(info.get().topLevelName);
         if(p.isCommunity())
             return p;
         else
@@ -363,9 +365,7 @@ public final class JNProject extends JNObject implements Comparable {
      * projects (e.g., games.dev.java.net, java-ws-xml.dev.java.net)
      */
     public boolean isCommunity() throws ProcessingException {
-       if( isCommunity==null )
-           parseProjectInfo();
-       return isCommunity;
+       return info.get().isCommunity;
     }
     
     /**
@@ -378,7 +378,7 @@ public final class JNProject extends JNObject implements Comparable {
      * @see #getOwners()
      */
     public Set<JNUser> getOwners() throws ProcessingException {
-        parseProjectInfo();
+        Set<JNUser> owners = info.get().owners;
         if (owners.isEmpty())
             // do it the slow way, since projects can now delete the default summary table
             owners = getMembership().getUserOf(root.getRole("Project Owner"));
@@ -411,20 +411,18 @@ public final class JNProject extends JNObject implements Comparable {
      *      any sub-project, it returns an empty set. The set is read-only.
      */
     public Set<JNProject> getSubProjects() throws ProcessingException {
-        parseProjectInfo();
-        return subProjects;
+        return info.get().subProjects;
     }
 
     public boolean exists() throws ProcessingException {
-        if(exists==null)
-            try {
-                parseProjectInfo();
-            } catch (ProcessingException e) {
-                if(e.getMessage().contains("The dev.java.net domain contains no project named"))
-                    return false;
-                throw e;
-            }
-        return exists;
+        try {
+            info.get();
+            return true;
+        } catch (ProcessingException e) {
+            if(e.getMessage().contains("The dev.java.net domain contains no project named"))
+                return false;
+            throw e;
+        }
     }
 
     /**
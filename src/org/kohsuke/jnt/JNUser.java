@@ -63,8 +63,9 @@ public class JNUser extends JNObject implements Comparable {
      *
      * <p>
      * Accessing this property requires a domain admin privilege.
+     * Concurrent calls on the same user share one lookup.
      */
-    public int getId() throws ProcessingException {
+    public synchronized int getId() throws ProcessingException {
         if(id!=null)
             return id;
 
@@ -79,7 +80,7 @@ public class JNUser extends JNObject implements Comparable {
                 r = checkError(form.submit());
 
                 Document dom = Util.getDom4j(r);
-                Element a = (Element)dom.selectSingleNode("//DIV[@id='userlist']//TABLE//TR[2]//A");
+                Element a = Selector.of("//DIV[@id='userlist']//TABLE//TR[2]//A").selectSingleNode(dom);
                 String anchor = a.attributeValue("href");
                 Matcher m = USERID_PATTERN.matcher(anchor);
                 if(!m.matches())
@@ -112,9 +113,8 @@ public class JNUser extends JNObject implements Comparable {
             protected List<JNProject> scrape() throws IOException, SAXException, ProcessingException {
                 List<JNProject> projects = new ArrayList<JNProject>();
 
-                WebResponse r = goTo("https://www.dev.java.net/servlets/UserEdit?userID=" + getId());
-                Document dom = Util.getDom4j(r);
-                List<Element> anchors = (List<Element>)dom.selectNodes("//DIV[@id='projectroles']/TABLE//TR/TD[1]/A");
+                Document dom = fetch("https://www.dev.java.net/servlets/UserEdit?userID=" + getId());
+                List<Element> anchors = Selector.of("//DIV[@id='projectroles']/TABLE//TR/TD[1]/A").selectNodes(dom);
                 for (Element a : anchors) {
                     projects.add(root.getProject(a.getTextTrim()));
                 }
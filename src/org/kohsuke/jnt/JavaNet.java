@@ -11,6 +11,8 @@ import com.meterware.httpunit.cookies.CookieProperties;
 import org.dom4j.Document;
 import org.dom4j.Element;
 import org.dom4j.Node;
+import org.kohsuke.jnt.fixture.FixtureServer;
+import org.kohsuke.jnt.fixture.FixtureStore;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -20,10 +22,12 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
 import java.net.URLEncoder;
-import java.util.HashMap;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
 import java.util.logging.Level;
@@ -41,31 +45,41 @@ import java.util.logging.Level;
 public class JavaNet extends JNObject {
     protected final WebConversation wc;
 
-    private final Map<String,JNProject> projects = new HashMap<String,JNProject>();
-    private final Map<String,JNUser> users = new HashMap<String,JNUser>();
-    private final Map<String,JNRole> roles = new HashMap<String,JNRole>();
+    /**
+     * Used to fetch pages that are only scraped, without going through httpunit.
+     */
+    /*package*/ final PageFetcher fetcher = new PageFetcher(this);
+
+    /**
+     * Scraped state of the object model, by the pages it came from.
+     */
+    /*package*/ final Cached.Registry caches = new Cached.Registry();
+
+    private final Interner<JNProject> projects = new Interner<JNProject>();
+    private final Interner<JNUser> users = new Interner<JNUser>();
+    private final Interner<JNRole> roles = new Interner<JNRole>();
 
     /**
      * A special {@link JNUser} object that represents the current user.
      */
-    private JNMyself myself;
+    private volatile JNMyself myself;
 
     private JavaNet() {
-        this(createWebConversation());
-    }
-
-    private static WebConversation createWebConversation() {
-        HttpUnitOptions.setScriptingEnabled(false);
-        return new WebConversation();
+        this(null);
     }
 
+    /**
+     * @param wc
+     *      null to use our own {@link Conversation}.
+     */
     private JavaNet(WebConversation wc) {
         super(null);
-        this.wc = wc;
 
         // disable scripting support
         HttpUnitOptions.setScriptingEnabled(false);
 
+        this.wc = wc!=null ? wc : new Conversation(this);
+
         // java.net security certificate cause a problem. So avoid it by disabling certificate validation.
         SSLTrustAllManager.install();
 
@@ -82,17 +96,249 @@ public class JavaNet extends JNObject {
                 // running very old version of parser, but don't make it fatal
                 LOGGER.log(Level.WARNING,"Failed to configure parser",e);
             }
-            wc.setDocumentBuilderFactory(dbf);
+            this.wc.setDocumentBuilderFactory(dbf);
         } catch (ParserConfigurationException e) {
             throw new Error(e);
         }
     }
 
+    /**
+     * HTTP proxy in use, if any. Remembered so that cloned sessions can use the same proxy.
+     */
+    private String proxyHost;
+    private int proxyPort;
+
     private void setProxyServer( String hostName, int port ) {
+        this.proxyHost = hostName;
+        this.proxyPort = port;
         wc.setProxyServer(hostName,port);
         System.setProperty( "https.proxyHost", hostName );
         System.setProperty( "https.proxyPort", Integer.toString( port ) );
     }
+
+    /**
+     * Optional cache of the pages fetched for scraping.
+     */
+    private volatile PageCache pageCache;
+
+    /**
+     * Sets the on-disk cache used for pages that are fetched for scraping.
+     *
+     * <p>
+     * The same {@link PageCache} can be shared among multiple {@link JavaNet}s.
+     * Sessions created by {@link #connectByClone(JavaNet)} inherit the cache.
+     *
+     * @param cache
+     *      null to disable caching, which is the default.
+     */
+    public void setPageCache(PageCache cache) {
+        this.pageCache = cache;
+    }
+
+    /**
+     * Gets the cache set by {@link #setPageCache(PageCache)}.
+     *
+     * @return
+     *      null if no cache is used.
+     */
+    public PageCache getPageCache() {
+        return pageCache;
+    }
+
+    /**
+     * Optional policy for retrying read requests.
+     */
+    private volatile RetryPolicy retryPolicy;
+
+    /**
+     * Sets how requests that failed for a transient reason, such as an I/O error
+     * or a 5xx status code, are retried.
+     *
+     * <p>
+     * Only the requests that are safe to repeat are retried; form submissions never are.
+     * Sessions created by {@link #connectByClone(JavaNet)} inherit the policy.
+     *
+     * @param policy
+     *      null to fail on the first error, which is the default.
+     */
+    public void setRetryPolicy(RetryPolicy policy) {
+        this.retryPolicy = policy;
+    }
+
+    /**
+     * Gets the policy set by {@link #setRetryPolicy(RetryPolicy)}.
+     *
+     * @return
+     *      null if requests are not retried.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Limits how many {@link JNProject}s, {@link JNUser}s, and {@link JNRole}s this session keeps in memory.
+     *
+     * <p>
+     * These objects are created on demand and reused, and by default they are kept
+     * as long as this session is alive, along with whatever they have scraped. In a long-running
+     * process that walks a lot of users or projects, this can grow large. With a limit,
+     * only the most recently created ones are kept, and the rest are discarded once
+     * the application stops referring to them. The same name never maps to two live objects.
+     *
+     * <p>
+     * Sessions created by {@link #connectByClone(JavaNet)} inherit the limit.
+     *
+     * @param limit
+     *      maximum number of objects of each kind to keep. -1 for no limit, which is the default.
+     */
+    public void setInternLimit(int limit) {
+        projects.setLimit(limit);
+        users.setLimit(limit);
+        roles.setLimit(limit);
+    }
+
+    /**
+     * Gets the limit set by {@link #setInternLimit(int)}.
+     */
+    public int getInternLimit() {
+        return users.getLimit();
+    }
+
+    /**
+     * True to pace the requests through {@link RequestGovernor}.
+     */
+    private volatile boolean paced;
+
+    /**
+     * Makes the requests of this session go through the JVM-wide pacing of the requests to java.net,
+     * which limits the request rate and adapts the number of concurrent requests to how the server copes.
+     *
+     * <p>
+     * This is meant for bulk jobs that make a lot of requests, possibly from many threads.
+     * Setting the system property <tt>org.kohsuke.jnt.RequestGovernor.rate</tt> overrides this for all
+     * the sessions, either turning the pacing on at the given rate, or off when set to 0.
+     * Sessions created by {@link #connectByClone(JavaNet)} inherit the setting.
+     *
+     * @param paced
+     *      false to send requests as soon as they are made, which is the default.
+     */
+    public void setPaced(boolean paced) {
+        this.paced = paced;
+    }
+
+    /**
+     * Gets the value set by {@link #setPaced(boolean)}.
+     */
+    public boolean isPaced() {
+        return paced;
+    }
+
+    /**
+     * How long scraped state is kept, in milliseconds. 0 to keep it until it's invalidated.
+     */
+    private volatile long cacheTTL;
+
+    /**
+     * Sets how long the information scraped from java.net, such as the members of a project
+     * or the files in a folder, is kept before it's scraped again.
+     *
+     * <p>
+     * Regardless of this, the information is scraped again after this session changes
+     * the pages it came from, but changes made elsewhere go unnoticed until it expires.
+     * Sessions created by {@link #connectByClone(JavaNet)} inherit the setting.
+     *
+     * @param ttl
+     *      in milliseconds. 0 to keep the information for as long as the objects live, which is the default.
+     */
+    public void setCacheTTL(long ttl) {
+        if(ttl<0)
+            throw new IllegalArgumentException();
+        this.cacheTTL = ttl;
+    }
+
+    /**
+     * Gets the value set by {@link #setCacheTTL(long)}.
+     */
+    public long getCacheTTL() {
+        return cacheTTL;
+    }
+
+    /**
+     * Discards the information scraped from the given page, so that it will be scraped again when it's needed.
+     *
+     * <p>
+     * Call this after changing java.net by other means than this library, for example
+     * <tt>invalidateCache("https://glassfish.dev.java.net/servlets/ProjectMemberList")</tt>
+     * after changing the members of the glassfish project.
+     *
+     * @param url
+     *      If this URL has no query string, the same page with any query string is also covered.
+     */
+    public void invalidateCache(String url) {
+        caches.invalidate(url);
+    }
+
+    /**
+     * Discards all the information scraped so far.
+     */
+    public void invalidateCache() {
+        caches.invalidateAll();
+    }
+
+    /**
+     * If non-null, responses are recorded here.
+     */
+    private volatile FixtureStore recorder;
+
+    /**
+     * True to send requests in plain HTTP to {@link FixtureServer}.
+     */
+    private volatile boolean fixtureMode;
+
+    /**
+     * Records every response from java.net into the given store, so that
+     * they can be replayed later by {@link FixtureServer}.
+     *
+     * @param store
+     *      null to stop recording, which is the default.
+     */
+    public void setRecorder(FixtureStore store) {
+        this.recorder = store;
+    }
+
+    public FixtureStore getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Talks to {@link FixtureServer} running at the given address, instead of the real java.net.
+     *
+     * <p>
+     * This uses the server as the HTTP proxy, and sends all the requests in plain HTTP.
+     * Normally you should use {@link FixtureServer#connect()}, which calls this method.
+     */
+    public void useFixtureServer(String host, int port) {
+        setProxyServer(host,port);
+        fixtureMode = true;
+    }
+
+    /**
+     * Rewrites the URL if we are talking to {@link FixtureServer}.
+     */
+    /*package*/ String rewrite(String url) {
+        if(fixtureMode && url.startsWith("https://"))
+            return "http://"+url.substring("https://".length());
+        return url;
+    }
+
+    /**
+     * Gets the proxy to be used for connections made outside httpunit.
+     */
+    /*package*/ Proxy getProxy() {
+        if(proxyHost==null)
+            return Proxy.NO_PROXY;
+        return new Proxy(Proxy.Type.HTTP,new InetSocketAddress(proxyHost,proxyPort));
+    }
     
     /**
      * Obtains the session being used.
@@ -142,14 +388,21 @@ public class JavaNet extends JNObject {
     /*package*/ String getCurrentUser() throws ProcessingException {
         return new Scraper<String>("unable to access start page") {
             protected String scrape() throws IOException, SAXException, ProcessingException {
-                WebResponse r = goTo("https://www.dev.java.net/servlets/StartPage");
-                Document dom = Util.getDom4j(r);
-                Node e = dom.selectSingleNode("//DIV[@id='loginbox']//STRONG[@class='username']");
+                Document dom = fetch("https://www.dev.java.net/servlets/StartPage");
+                Node e = Selector.of("//DIV[@id='loginbox']//STRONG[@class='username']").selectSingleNode(dom);
                 return e!=null ? ((Element)e).getTextTrim() : null;
             }
         }.run();
     }
 
+    /**
+     * Gets the name of the logged-in user, or null if anonymous.
+     */
+    /*package*/ String getUserName() {
+        JNMyself m = myself;
+        return m!=null ? m.getName() : null;
+    }
+
     /**
      * Gets the session cookie that the server uses to track us.
      */
@@ -173,13 +426,14 @@ public class JavaNet extends JNObject {
                     props.load(in);
 
                     // also load the .java.net file to make sure that the user name matches
-                    Properties accountInfo = new Properties();
-                    accountInfo.load( new FileInputStream(af) );
+                    ConnectionInfo accountInfo = new ConnectionInfo(af);
 
                     // try logging in and see if it works
                     JavaNet jn = connectByClone(props.getProperty("JSESSIONID"));
-                    if (jn.getMyself()!=null &&  jn.getMyself().getName().equals(accountInfo.get("userName")))
+                    if (jn.getMyself()!=null &&  jn.getMyself().getName().equals(accountInfo.userName)) {
+                        jn.setPageCache(accountInfo.createPageCache());
                         return jn;
+                    }
                 } finally {
                     in.close();
                 }
@@ -234,6 +488,7 @@ public class JavaNet extends JNObject {
         
         if(con.proxyServer!=null)
             session.setProxyServer( con.proxyServer, con.proxyPort );
+        session.setPageCache(con.createPageCache());
 
         session.login(con.userName,con.password);
         
@@ -251,18 +506,44 @@ public class JavaNet extends JNObject {
      * Connects by just reusing an earlier session established by another {@link JavaNet} instance.
      */
     public static JavaNet connectByClone(JavaNet base) throws ProcessingException {
-        return connectByClone(base.getSessionID());
+        JavaNet jn = new JavaNet();
+        if(base.proxyHost!=null)
+            jn.setProxyServer(base.proxyHost,base.proxyPort);
+        // copy everything before making the first request, so that it goes to the same place
+        // (such as FixtureServer) in the same way (recorded, cached, retried) as the base session
+        jn.setPageCache(base.getPageCache());
+        jn.setRetryPolicy(base.getRetryPolicy());
+        jn.setRecorder(base.getRecorder());
+        jn.fixtureMode = base.fixtureMode;
+        jn.setInternLimit(base.getInternLimit());
+        jn.setCacheTTL(base.getCacheTTL());
+        jn.setPaced(base.isPaced());
+        jn.joinSession(base.getSessionID());
+        return jn;
     }
 
     private static JavaNet connectByClone(String sessionID) throws ProcessingException {
         JavaNet jn = new JavaNet();
-        jn.wc.addCookie("JSESSIONID",sessionID);
-        String user = jn.getCurrentUser();
-        if (user!=null)
-            jn.myself = new JNMyself(jn,user);
+        jn.joinSession(sessionID);
         return jn;
     }
 
+    /**
+     * Starts using the given HTTP session, and finds out who is logged in with it.
+     *
+     * @param sessionID
+     *      null if the session to join is anonymous and hasn't talked to the server yet,
+     *      in which case there's nothing to join.
+     */
+    private void joinSession(String sessionID) throws ProcessingException {
+        if(sessionID==null)
+            return;
+        wc.addCookie("JSESSIONID",sessionID);
+        String user = getCurrentUser();
+        if (user!=null)
+            myself = new JNMyself(this,user);
+    }
+
     /**
      * A bit more object-oriented way of calling {@link #connectByClone(JavaNet)} .
      */
@@ -309,13 +590,13 @@ public class JavaNet extends JNObject {
      *      always non-null, even if no such project exists.
      */
     public JNProject getProject(String projectName) throws ProcessingException {
+        if(projectName==null)
+            throw new IllegalArgumentException("project name is null");
         projectName = projectName.toLowerCase();
         JNProject p = projects.get(projectName);
-        if(p==null){
-            p = new JNProject(this,projectName);
-            projects.put(projectName,p);
-        }
-        return p; 
+        if(p==null)
+            p = projects.intern(projectName,new JNProject(this,projectName));
+        return p;
     }
     
     /**
@@ -341,10 +622,8 @@ public class JavaNet extends JNObject {
      */
     public JNUser getUser(String userName) {
         JNUser u = users.get(userName);
-        if(u==null) {
-            u = new JNUser(this,userName);
-            users.put(userName,u);
-        }
+        if(u==null)
+            u = users.intern(userName,new JNUser(this,userName));
         return u;
     }
 
@@ -357,10 +636,8 @@ public class JavaNet extends JNObject {
      */
     public JNRole getRole(String roleName) throws ProcessingException {
         JNRole r = roles.get(roleName);
-        if(r==null) {
-            r = new JNRole(this,roleName);
-            roles.put(roleName,r);
-        }
+        if(r==null)
+            r = roles.intern(roleName,new JNRole(this,roleName));
         return r;
     }
 
@@ -370,27 +647,27 @@ public class JavaNet extends JNObject {
      */
     public String[][] runAdHocQuery(final String sql) throws ProcessingException {
         return new Scraper<String[][]>("unable to run ad-hoc query") {
-            protected String[][] scrape() throws IOException, SAXException, ProcessingException {
-                Document dom = Util.getDom4j(goTo(
-                        "https://www.dev.java.net/servlets/AdHocQuery?query="
-                                + URLEncoder.encode(sql, "UTF-8") + "&Button=Run+query"));
-                List<Element> trs = (List<Element>) dom.selectNodes("//DIV[@id='adhocqueryresults']//TR");
-                if(trs.size()<=1)   // no data
-                    return new String[0][];
-
-                trs = trs.subList(1,trs.size()); // skip the first header row
-                String[][] data = new String[trs.size()][];
-
-                for (int i=0; i < trs.size(); i++) {
-                    List<Element> tds = trs.get(i).elements("TD");
-                    data[i] = new String[tds.size()];
-                    for (int j = 0; j < tds.size(); j++) {
-                        Element td = tds.get(j);
-                        data[i][j] = td.getText();
-                    }
-                }
-
-                return data;
+            protected String[][] scrape() throws IOException, SAXException, ProcessingException, ParseException {
+                final List<String[]> data = new ArrayList<String[]>();
+
+                fetch("https://www.dev.java.net/servlets/AdHocQuery?query="
+                        + URLEncoder.encode(sql, "UTF-8") + "&Button=Run+query",
+                    new HtmlExtractor().add(Selector.of("//DIV[@id='adhocqueryresults']//TR"), new HtmlExtractor.Handler() {
+                        boolean header = true;
+                        public void onMatch(Element tr) {
+                            if(header) {
+                                header = false; // skip the first header row
+                                return;
+                            }
+                            List<Element> tds = (List<Element>)tr.elements("TD");
+                            String[] row = new String[tds.size()];
+                            for (int j = 0; j < tds.size(); j++)
+                                row[j] = tds.get(j).getText();
+                            data.add(row);
+                        }
+                    }));
+
+                return data.toArray(new String[data.size()][]);
             }
         }.run();
     }
@@ -0,0 +1,160 @@
+package org.kohsuke.jnt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Pool of {@link JavaNet} sessions that share one login.
+ *
+ * <p>
+ * A single {@link JavaNet} object isn't thread-safe, since everything goes
+ * through one {@link com.meterware.httpunit.WebConversation} and some of the
+ * scraping code depends on its "current page." This class clones the session
+ * of an already logged-in {@link JavaNet} N times (see {@link JavaNet#connectByClone(JavaNet)}),
+ * and lends one session to each worker thread at a time, so that bulk jobs
+ * can talk to java.net in parallel.
+ *
+ * <p>
+ * Each lent {@link JavaNet} is a full root of the object model, so a worker
+ * should obtain {@link JNProject}, {@link JNIssueTracker}, and so on from
+ * the session it was given, and not share them with other workers:
+ *
+ * <pre>
+ * JavaNetPool pool = new JavaNetPool(JavaNet.connect(),8);
+ * ...
+ * // in a worker thread
+ * int n = pool.run(new JavaNetPool.Task&lt;Integer>() {
+ *     public Integer run(JavaNet session) throws ProcessingException {
+ *         return session.getProject(name).getMembership().getMembers().size();
+ *     }
+ * });
+ * </pre>
+ */
+public final class JavaNetPool {
+    /**
+     * All the sessions in this pool, including the one that was given.
+     */
+    private final List<JavaNet> sessions;
+
+    /**
+     * Sessions that are currently not lent to anyone.
+     */
+    private final BlockingQueue<JavaNet> idle;
+
+    /**
+     * Sessions that are currently lent, to catch a session released twice.
+     */
+    private final Set<JavaNet> lent = new HashSet<JavaNet>();
+
+    /**
+     * Unit of work executed with a session borrowed from the pool.
+     */
+    public interface Task<T> {
+        T run(JavaNet session) throws ProcessingException;
+    }
+
+    /**
+     * @param base
+     *      Logged-in session whose login is shared by all the sessions in the pool.
+     *      This object itself becomes a part of the pool, so the caller shouldn't
+     *      use it directly once the pool is created.
+     * @param size
+     *      Number of sessions in the pool, which is also the maximum
+     *      number of concurrent requests made through this pool.
+     */
+    public JavaNetPool(JavaNet base, int size) throws ProcessingException {
+        if(size<1)
+            throw new IllegalArgumentException("pool size must be positive: "+size);
+
+        List<JavaNet> sessions = new ArrayList<JavaNet>(size);
+        sessions.add(base);
+        while(sessions.size()<size)
+            sessions.add(JavaNet.connectByClone(base));
+
+        this.sessions = Collections.unmodifiableList(sessions);
+        this.idle = new LinkedBlockingQueue<JavaNet>(sessions);
+    }
+
+    /**
+     * Creates a pool by using the connection info from ~/.java.net.
+     *
+     * @see JavaNet#connect()
+     */
+    public static JavaNetPool connect(int size) throws ProcessingException {
+        return new JavaNetPool(JavaNet.connect(),size);
+    }
+
+    /**
+     * Gets the number of sessions in this pool.
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Gets all the sessions in this pool, regardless of whether they are lent or not.
+     *
+     * @return
+     *      read-only list.
+     */
+    public List<JavaNet> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Borrows a session from the pool, blocking until one becomes available.
+     *
+     * <p>
+     * The caller has an exclusive access to the returned session until it
+     * gives it back via {@link #release(JavaNet)}. Consider using {@link #run(Task)},
+     * which takes care of this.
+     */
+    public JavaNet acquire() throws InterruptedException {
+        JavaNet session = idle.take();
+        synchronized(lent) {
+            lent.add(session);
+        }
+        return session;
+    }
+
+    /**
+     * Returns a session borrowed by {@link #acquire()}.
+     *
+     * @throws IllegalArgumentException
+     *      if the session isn't currently lent from this pool, for example because it was already released.
+     */
+    public void release(JavaNet session) {
+        synchronized(lent) {
+            if(!lent.remove(session)) {
+                if(!sessions.contains(session))
+                    throw new IllegalArgumentException("session doesn't belong to this pool");
+                throw new IllegalArgumentException("session isn't lent");
+            }
+        }
+        idle.add(session);
+    }
+
+    /**
+     * Runs the task with a borrowed session, then returns the session to the pool.
+     */
+    public <T> T run(Task<T> task) throws ProcessingException {
+        JavaNet session;
+        try {
+            session = acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("interrupted while waiting for a session",e);
+        }
+
+        try {
+            return task.run(session);
+        } finally {
+            release(session);
+        }
+    }
+}
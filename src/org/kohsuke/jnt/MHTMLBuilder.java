@@ -96,7 +96,7 @@ public class MHTMLBuilder {
         find(tree, r,"//LINK", "href");
 
         // replpace @import in CSS
-        for( Element style : (List<Element>)tree.selectNodes("//STYLE") ) {
+        for( Element style : Selector.of("//STYLE").<Element>selectNodes(tree) ) {
             String text = style.getText();
             findInCSS(text, r.getURL());
         }
@@ -0,0 +1,317 @@
+package org.kohsuke.jnt;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Statistics of the operations performed against java.net, across the whole JVM.
+ *
+ * <p>
+ * Two kinds of things are measured. One is each {@link Scraper}, identified by
+ * the method that runs it (such as <tt>Scraper JNProject.parseProjectInfo</tt>).
+ * The other is each HTTP request, whether it's made by httpunit ({@link JNObject#goTo(String)},
+ * form submissions, and link clicks) or by the read-only fetch path. Requests are
+ * grouped by their URL pattern, where the project name, numbers, and query parameter
+ * values are wildcarded (such as <tt>Request https://*.dev.java.net/issues/xml.cgi?id=*</tt>).
+ *
+ * <p>
+ * For each, this records the count, the error count, a latency histogram,
+ * the bytes received (after decompression), and the time spent on parsing HTML/XML.
+ * The bytes of the requests made by httpunit are only counted if the server sends <tt>Content-Length</tt>.
+ * The data is available from {@link #snapshot()}, and also through JMX
+ * as <tt>org.kohsuke.jnt:type=Metrics</tt>.
+ */
+public final class Metrics implements MetricsMBean {
+    private final Map<String,Recorder> recorders = new TreeMap<String,Recorder>();
+
+    private Metrics() {}
+
+    /**
+     * Gets the singleton instance.
+     */
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Upper bounds of the latency histogram buckets in milliseconds.
+     * The last bucket is for everything slower than the last bound.
+     */
+    public static final long[] BUCKETS = {10,30,100,300,1000,3000,10000,30000};
+
+    /**
+     * Accumulates the measurements of one operation.
+     */
+    static final class Recorder {
+        private final String name;
+        private long count, errors, totalNanos, maxNanos, bytes, parseNanos;
+        private final long[] histogram = new long[BUCKETS.length+1];
+
+        private Recorder(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records one execution.
+         *
+         * @param start
+         *      {@link System#nanoTime()} when the operation started.
+         */
+        synchronized void record(long start, boolean failed) {
+            long nanos = System.nanoTime()-start;
+            count++;
+            if(failed)  errors++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos,nanos);
+
+            long ms = nanos/1000000;
+            int i=0;
+            while(i<BUCKETS.length && ms>BUCKETS[i])
+                i++;
+            histogram[i]++;
+        }
+
+        synchronized void addBytes(long n) {
+            if(n>0)     bytes += n;
+        }
+
+        synchronized void addParseTime(long start) {
+            parseNanos += System.nanoTime()-start;
+        }
+
+        synchronized Snapshot snapshot() {
+            return new Snapshot(name,count,errors,totalNanos,maxNanos,bytes,parseNanos,histogram.clone());
+        }
+    }
+
+    /**
+     * Immutable copy of the statistics of one operation.
+     */
+    public static final class Snapshot {
+        private final String name;
+        private final long count, errors, totalNanos, maxNanos, bytes, parseNanos;
+        private final long[] histogram;
+
+        private Snapshot(String name, long count, long errors, long totalNanos, long maxNanos, long bytes, long parseNanos, long[] histogram) {
+            this.name = name;
+            this.count = count;
+            this.errors = errors;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.bytes = bytes;
+            this.parseNanos = parseNanos;
+            this.histogram = histogram;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrorCount() {
+            return errors;
+        }
+
+        /**
+         * Total time spent, in milliseconds.
+         */
+        public long getTotalTime() {
+            return totalNanos/1000000;
+        }
+
+        /**
+         * Average time spent per execution, in milliseconds.
+         */
+        public double getMeanTime() {
+            return count==0 ? 0 : totalNanos/1e6/count;
+        }
+
+        /**
+         * Slowest execution, in milliseconds.
+         */
+        public long getMaxTime() {
+            return maxNanos/1000000;
+        }
+
+        /**
+         * Bytes received. Not all requests report their sizes, so this is a lower bound.
+         */
+        public long getBytesReceived() {
+            return bytes;
+        }
+
+        /**
+         * Total time spent on parsing HTML/XML, in milliseconds.
+         */
+        public long getParseTime() {
+            return parseNanos/1000000;
+        }
+
+        /**
+         * Number of executions for each bucket in {@link Metrics#BUCKETS}.
+         */
+        public long[] getLatencyHistogram() {
+            return histogram.clone();
+        }
+
+        public String toString() {
+            StringBuilder buf = new StringBuilder();
+            buf.append(name).append(": count=").append(count).append(" errors=").append(errors)
+               .append(" mean=").append(Math.round(getMeanTime())).append("ms max=").append(getMaxTime())
+               .append("ms bytes=").append(bytes).append(" parse=").append(getParseTime()).append("ms histogram=");
+            for( int i=0; i<histogram.length; i++ ) {
+                if(i>0) buf.append(',');
+                buf.append(i<BUCKETS.length ? "<="+BUCKETS[i] : ">"+BUCKETS[BUCKETS.length-1]).append(':').append(histogram[i]);
+            }
+            return buf.toString();
+        }
+    }
+
+    /**
+     * Gets the recorder for the given operation, creating it if necessary.
+     */
+    synchronized Recorder of(String name) {
+        Recorder r = recorders.get(name);
+        if(r==null)
+            recorders.put(name,r=new Recorder(name));
+        return r;
+    }
+
+    /**
+     * Recorder for a {@link Scraper}.
+     */
+    static Recorder forScraper(Scraper<?> scraper) {
+        Class<?> c = scraper.getClass();
+        String name = SCRAPER_NAMES.get(c);
+        if(name==null) {
+            // reflection is slow, so only do this once per class
+            Method m = c.getEnclosingMethod();
+            name = "Scraper "+(m!=null ? m.getDeclaringClass().getSimpleName()+'.'+m.getName() : c.getName());
+            SCRAPER_NAMES.put(c,name);
+        }
+        return INSTANCE.of(name);
+    }
+
+    /**
+     * Operation names of the {@link Scraper} classes.
+     */
+    private static final ConcurrentHashMap<Class<?>,String> SCRAPER_NAMES = new ConcurrentHashMap<Class<?>,String>();
+
+    /**
+     * Recorder for a HTTP request.
+     */
+    static Recorder forRequest(String url) {
+        return INSTANCE.of("Request "+toPattern(url));
+    }
+
+    /**
+     * Turns a URL into its pattern, by wildcarding the parts that vary from one call to another.
+     */
+    static String toPattern(String url) {
+        String q = "";
+        int idx = url.indexOf('?');
+        if(idx>=0) {
+            q = QUERY_VALUE.matcher(url.substring(idx)).replaceAll("=*");
+            url = url.substring(0,idx);
+        }
+        url = PROJECT_HOST.matcher(url).replaceFirst("://*.dev.java.net");
+        url = NUMBER.matcher(url).replaceAll("/*");
+        return url+q;
+    }
+
+    private static final Pattern PROJECT_HOST = Pattern.compile("://[^/.]+\\.dev\\.java\\.net");
+    private static final Pattern NUMBER = Pattern.compile("/[0-9]+(?=/|$)");
+    private static final Pattern QUERY_VALUE = Pattern.compile("=[^&]*");
+
+    /**
+     * Takes a snapshot of all the statistics.
+     *
+     * @return
+     *      read-only map keyed by the operation names, sorted.
+     */
+    public Map<String,Snapshot> snapshot() {
+        Map<String,Snapshot> r = new TreeMap<String,Snapshot>();
+        synchronized(this) {
+            for (Recorder rec : recorders.values())
+                r.put(rec.name,rec.snapshot());
+        }
+        return Collections.unmodifiableMap(r);
+    }
+
+//
+// MetricsMBean
+//
+    public synchronized String[] getOperations() {
+        return recorders.keySet().toArray(new String[recorders.size()]);
+    }
+
+    public String[] getReport() {
+        Map<String,Snapshot> s = snapshot();
+        String[] r = new String[s.size()];
+        int i=0;
+        for (Snapshot v : s.values())
+            r[i++] = v.toString();
+        return r;
+    }
+
+    public long getCount(String operation) {
+        return get(operation).getCount();
+    }
+
+    public long getErrorCount(String operation) {
+        return get(operation).getErrorCount();
+    }
+
+    public double getMeanTime(String operation) {
+        return get(operation).getMeanTime();
+    }
+
+    public long getBytesReceived(String operation) {
+        return get(operation).getBytesReceived();
+    }
+
+    public long getParseTime(String operation) {
+        return get(operation).getParseTime();
+    }
+
+    public long[] getLatencyHistogram(String operation) {
+        return get(operation).getLatencyHistogram();
+    }
+
+    private synchronized Snapshot get(String operation) {
+        Recorder r = recorders.get(operation);
+        if(r==null)
+            throw new IllegalArgumentException("No such operation: "+operation);
+        return r.snapshot();
+    }
+
+    public synchronized void reset() {
+        recorders.clear();
+    }
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,new ObjectName("org.kohsuke.jnt:type=Metrics"));
+        } catch (JMException e) {
+            LOGGER.log(Level.FINE,"Failed to register the metrics MBean",e);
+        } catch (SecurityException e) {
+            LOGGER.log(Level.FINE,"Failed to register the metrics MBean",e);
+        }
+    }
+}
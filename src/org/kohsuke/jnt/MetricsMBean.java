@@ -0,0 +1,39 @@
+package org.kohsuke.jnt;
+
+/**
+ * JMX view of {@link Metrics}.
+ *
+ * <p>
+ * Times are in milliseconds. The operation names are the ones listed in {@link #getOperations()}.
+ */
+public interface MetricsMBean {
+    /**
+     * Names of all the operations that have been recorded.
+     */
+    String[] getOperations();
+
+    /**
+     * One line summary for each operation.
+     */
+    String[] getReport();
+
+    long getCount(String operation);
+
+    long getErrorCount(String operation);
+
+    double getMeanTime(String operation);
+
+    long getBytesReceived(String operation);
+
+    long getParseTime(String operation);
+
+    /**
+     * Counts for each bucket in {@link Metrics#BUCKETS}.
+     */
+    long[] getLatencyHistogram(String operation);
+
+    /**
+     * Discards all the statistics collected so far.
+     */
+    void reset();
+}
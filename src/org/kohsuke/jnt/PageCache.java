@@ -0,0 +1,274 @@
+package org.kohsuke.jnt;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk cache of the pages fetched for scraping.
+ *
+ * <p>
+ * Many pages, like the project index page or the document list, rarely change.
+ * When the server sends <tt>ETag</tt> or <tt>Last-Modified</tt> for a page, this cache
+ * keeps the page, and the next fetch of the same page is made as a conditional GET,
+ * so the body is only transferred when it has actually changed.
+ * This lets repeated CLI runs and Ant builds skip unchanged pages.
+ *
+ * <p>
+ * Entries are keyed by the URL and the user, since pages are rendered differently
+ * depending on who's looking. The total size of the cached bodies is bounded,
+ * and the least recently used entries are evicted first.
+ *
+ * <p>
+ * One instance can be shared by multiple {@link JavaNet}s, and it's thread-safe.
+ * @see JavaNet#setPageCache(PageCache)
+ */
+public final class PageCache {
+    private final File dir;
+    private final long maxSize;
+
+    /**
+     * Key to the size of the body, in the LRU order.
+     */
+    private final LinkedHashMap<String,Long> index = new LinkedHashMap<String,Long>(16,0.75f,true);
+    private long totalSize;
+
+    /**
+     * @param dir
+     *      Directory to store the cached pages. Created if it doesn't exist.
+     * @param maxSize
+     *      Maximum total size of the cached pages in bytes.
+     */
+    public PageCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        dir.mkdirs();
+
+        // rebuild the index from what's on the disk, older ones first
+        File[] bodies = dir.listFiles();
+        if(bodies==null)    bodies = new File[0];
+        Arrays.sort(bodies,new Comparator<File>() {
+            public int compare(File a, File b) {
+                long d = a.lastModified()-b.lastModified();
+                return d<0 ? -1 : d>0 ? 1 : 0;
+            }
+        });
+        for (File f : bodies) {
+            String n = f.getName();
+            if(n.endsWith(BODY)) {
+                String key = n.substring(0,n.length()-BODY.length());
+                if(getMetaFile(key).exists()) {
+                    index.put(key,f.length());
+                    totalSize += f.length();
+                }
+            }
+        }
+        evict();
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * A cached page.
+     */
+    static final class Entry {
+        final String etag;
+        final String lastModified;
+        final String contentType;
+        /**
+         * The cached body. This is opened when the entry is looked up, so that it can still be read
+         * after another thread replaces or evicts the entry. The caller must close it.
+         */
+        final InputStream body;
+
+        private Entry(String etag, String lastModified, String contentType, InputStream body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Looks up the cached page.
+     *
+     * @return
+     *      null if not cached. Otherwise the caller must close {@link Entry#body}.
+     */
+    synchronized Entry get(String user, String url) {
+        String key = key(user,url);
+        if(index.get(key)==null)
+            return null;    // this also updates the LRU order
+
+        try {
+            Properties meta = new Properties();
+            InputStream in = new FileInputStream(getMetaFile(key));
+            try {
+                meta.load(in);
+            } finally {
+                in.close();
+            }
+            File body = getBodyFile(key);
+            InputStream bin = new FileInputStream(body);
+            body.setLastModified(System.currentTimeMillis());
+            return new Entry(meta.getProperty("etag"),meta.getProperty("lastModified"),meta.getProperty("contentType"),bin);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE,"Failed to read the cache entry for "+url,e);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Wraps the body of a page being fetched, so that the page is cached
+     * once the body is read until the end.
+     *
+     * @param body
+     *      the body of a 200 response. Other responses must never be cached, or else
+     *      an error page would be served in place of the page that it failed to fetch.
+     */
+    InputStream store(String user, String url, final String etag, final String lastModified, final String contentType, InputStream body) throws IOException {
+        final String key = key(user,url);
+        final File tmp = File.createTempFile(key,".tmp",dir);
+        final OutputStream out = new FileOutputStream(tmp);
+
+        return new FilterInputStream(body) {
+            private long size;
+            private boolean eof, skipped, closed;
+
+            public int read() throws IOException {
+                int ch = super.read();
+                if(ch<0)    eof = true;
+                else {
+                    out.write(ch);
+                    size++;
+                }
+                return ch;
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b,off,len);
+                if(n<0)     eof = true;
+                else {
+                    out.write(b,off,n);
+                    size+=n;
+                }
+                return n;
+            }
+
+            public long skip(long n) throws IOException {
+                // skipped bytes wouldn't be recorded, so the copy is no good
+                skipped = true;
+                return super.skip(n);
+            }
+
+            public void close() throws IOException {
+                if(closed)  return;
+                closed = true;
+                out.close();
+                super.close();
+                if(eof && !skipped && size<=maxSize) {
+                    Properties meta = new Properties();
+                    if(etag!=null)          meta.setProperty("etag",etag);
+                    if(lastModified!=null)  meta.setProperty("lastModified",lastModified);
+                    if(contentType!=null)   meta.setProperty("contentType",contentType);
+                    put(key,meta,tmp,size);
+                } else {
+                    tmp.delete();
+                }
+            }
+        };
+    }
+
+    private synchronized void put(String key, Properties meta, File body, long size) throws IOException {
+        remove(key);
+
+        OutputStream out = new FileOutputStream(getMetaFile(key));
+        try {
+            meta.store(out,null);
+        } finally {
+            out.close();
+        }
+        File dst = getBodyFile(key);
+        if(!body.renameTo(dst)) {
+            body.delete();
+            getMetaFile(key).delete();
+            throw new IOException("Failed to rename "+body+" to "+dst);
+        }
+
+        index.put(key,size);
+        totalSize += size;
+        evict();
+    }
+
+    private synchronized void remove(String key) {
+        Long size = index.remove(key);
+        if(size!=null)
+            totalSize -= size;
+        getBodyFile(key).delete();
+        getMetaFile(key).delete();
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits in the budget.
+     */
+    private synchronized void evict() {
+        List<String> victims = new ArrayList<String>();
+        long size = totalSize;
+        for (Iterator<Map.Entry<String,Long>> itr = index.entrySet().iterator(); itr.hasNext() && size>maxSize;) {
+            Map.Entry<String,Long> e = itr.next();
+            victims.add(e.getKey());
+            size -= e.getValue();
+        }
+        for (String key : victims)
+            remove(key);
+    }
+
+    private File getBodyFile(String key) {
+        return new File(dir,key+BODY);
+    }
+
+    private File getMetaFile(String key) {
+        return new File(dir,key+META);
+    }
+
+    private static String key(String user, String url) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            byte[] digest = md5.digest(((user==null?"":user)+'\n'+url).getBytes("UTF-8"));
+            StringBuilder buf = new StringBuilder();
+            for (byte b : digest) {
+                buf.append(Character.forDigit((b>>4)&0xF,16));
+                buf.append(Character.forDigit(b&0xF,16));
+            }
+            return buf.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e); // MD5 is always there
+        } catch (IOException e) {
+            throw new Error(e); // UTF-8 is always there
+        }
+    }
+
+    private static final String BODY = ".body";
+    private static final String META = ".meta";
+
+    private static final Logger LOGGER = Logger.getLogger(PageCache.class.getName());
+}
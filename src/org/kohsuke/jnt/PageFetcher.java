@@ -0,0 +1,684 @@
+package org.kohsuke.jnt;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.ElementHandler;
+import org.dom4j.ElementPath;
+import org.dom4j.io.SAXReader;
+import org.kohsuke.jnt.fixture.FixtureStore;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Read-only fetch path for pages that we only scrape.
+ *
+ * <p>
+ * httpunit builds a full {@link com.meterware.httpunit.WebResponse} with frames, forms,
+ * and links for every page, which is a waste for pages we just run XPath on.
+ * This class instead uses {@link HttpURLConnection}, which keeps connections alive
+ * across requests, and streams the body straight into the parser.
+ *
+ * <p>
+ * The requests are made in the same HTTP session as the {@link JavaNet} that owns it,
+ * by sending its {@link JavaNet#getSessionID() session cookie}. Pages that need to be
+ * interacted with (clicking links, submitting forms) should still go through httpunit.
+ */
+final class PageFetcher {
+    private final JavaNet root;
+
+    PageFetcher(JavaNet root) {
+        this.root = root;
+    }
+
+    /**
+     * Fetches a HTML page and parses it by NekoHTML, just like {@link Util#getDom4j(com.meterware.httpunit.WebResponse)}.
+     *
+     * <p>
+     * If another thread is already fetching the same page as the same user, this waits for it
+     * and returns the same document instead of making another request. So the returned
+     * document must be treated as read-only.
+     */
+    Document getHTML(final String url) throws IOException, SAXException, ProcessingException {
+        return IN_FLIGHT.execute(key("HTML",url),new SingleFlight.Call<Document>() {
+            public Document call() throws IOException, SAXException, ProcessingException {
+                return loadHTML(url);
+            }
+        });
+    }
+
+    private Document loadHTML(final String url) throws IOException, SAXException, ProcessingException {
+        return RetryPolicy.execute(root.getRetryPolicy(),url,new RetryPolicy.Request<Document>() {
+            public Document call(boolean lastAttempt) throws IOException, SAXException, ProcessingException {
+                Body body = get(url);
+                Tail tail = new Tail(body.in);
+                try {
+                    long start = System.nanoTime();
+                    Document dom = Util.getDom4j(body.toHtmlInputSource(tail));
+                    body.recorder.addParseTime(start);
+                    skipToEnd(tail);
+                    // NekoHTML happily parses a page cut in the middle. Some pages might be
+                    // missing the end tag for real, so accept it if there's no more attempt to make.
+                    // Other documents, like the XML from xml.cgi, never have it to begin with.
+                    if(!lastAttempt && body.isHtml() && !tail.endsWith("</html>"))
+                        throw new IOException("Truncated response from "+url);
+                    return dom;
+                } finally {
+                    drain(body.in);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetches a HTML page and streams it through the given extractor, without building the whole tree.
+     *
+     * <p>
+     * Since the handlers see the elements as they are parsed, only the request itself is retried,
+     * not a failure in the middle of the body.
+     */
+    void extract(final String url, HtmlExtractor extractor) throws IOException, SAXException, ProcessingException, ParseException {
+        Body body = RetryPolicy.execute(root.getRetryPolicy(),url,new RetryPolicy.Request<Body>() {
+            public Body call(boolean lastAttempt) throws IOException, ProcessingException {
+                return get(url);
+            }
+        });
+        try {
+            long start = System.nanoTime();
+            extractor.parse(body.toHtmlInputSource(body.in));
+            body.recorder.addParseTime(start);
+        } finally {
+            drain(body.in);
+        }
+    }
+
+    /**
+     * Fetches a XML document, such as the output from xml.cgi.
+     *
+     * <p>
+     * Concurrent requests for the same document are collapsed into one, just like {@link #getHTML(String)}.
+     */
+    Document getXML(String url) throws IOException, SAXException, ProcessingException {
+        return getSizedXML(url).document;
+    }
+
+    /**
+     * Fetches a XML document, together with the size of the response.
+     */
+    SizedDocument getSizedXML(final String url) throws IOException, SAXException, ProcessingException {
+        return XML_IN_FLIGHT.execute(key("XML",url),new SingleFlight.Call<SizedDocument>() {
+            public SizedDocument call() throws IOException, SAXException, ProcessingException {
+                return loadXML(url);
+            }
+        });
+    }
+
+    private SizedDocument loadXML(final String url) throws IOException, SAXException, ProcessingException {
+        return RetryPolicy.execute(root.getRetryPolicy(),url,new RetryPolicy.Request<SizedDocument>() {
+            public SizedDocument call(boolean lastAttempt) throws IOException, SAXException, ProcessingException {
+                Body body = get(url);
+                Counter counter = new Counter(body.in);
+                try {
+                    SAXReader reader = new SAXReader();
+                    // IssueZilla always have a DTD but for a restricted access project, it fails to resolve.
+                    // so just stop looking at DTD altogether.
+                    reader.setEntityResolver(NO_DTD);
+                    long start = System.nanoTime();
+                    Document dom = reader.read(body.toInputSource(counter));
+                    body.recorder.addParseTime(start);
+                    skipToEnd(counter);
+                    return new SizedDocument(dom,counter.count);
+                } catch (DocumentException e) {
+                    if(e.getNestedException() instanceof IOException)
+                        throw (IOException)e.getNestedException();    // connection dropped in the middle
+                    SAXException se = new SAXException(e);
+                    se.initCause(e);
+                    throw se;
+                } finally {
+                    drain(body.in);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetches a XML document and hands the elements at the given path to the handler one by one,
+     * as soon as each of them is parsed. The elements are then detached, so the memory use doesn't
+     * grow with the size of the document.
+     *
+     * <p>
+     * Just like {@link #extract(String, HtmlExtractor)}, only the request itself is retried,
+     * and concurrent requests are not collapsed. The handler may make requests of its own,
+     * even though the response is still being received, since {@link RequestGovernor}
+     * doesn't hold back a thread that is already in the middle of a request.
+     *
+     * @param path
+     *      absolute path of the elements, such as <tt>/issuezilla/issue</tt>.
+     */
+    void streamXML(final String url, String path, final HtmlExtractor.Handler handler) throws IOException, SAXException, ProcessingException, ParseException {
+        final Body body = RetryPolicy.execute(root.getRetryPolicy(),url,new RetryPolicy.Request<Body>() {
+            public Body call(boolean lastAttempt) throws IOException, ProcessingException {
+                return get(url);
+            }
+        });
+        try {
+            SAXReader reader = new SAXReader();
+            reader.setEntityResolver(NO_DTD);
+            reader.addHandler(path,new ElementHandler() {
+                public void onStart(ElementPath path) {}
+
+                public void onEnd(ElementPath path) {
+                    Element e = path.getCurrent();
+                    long start = System.nanoTime();
+                    try {
+                        handler.onMatch(e);
+                    } catch (ProcessingException x) {
+                        throw new HandlerException(x);
+                    } catch (IOException x) {
+                        throw new HandlerException(x);
+                    } catch (ParseException x) {
+                        throw new HandlerException(x);
+                    } finally {
+                        // the server isn't any slower because of the time the handler takes
+                        if(body.slot!=null)
+                            body.slot.exclude(System.nanoTime()-start);
+                    }
+                    e.detach();
+                }
+            });
+            long start = System.nanoTime();
+            reader.read(body.toInputSource(body.in));
+            body.recorder.addParseTime(start);
+        } catch (DocumentException e) {
+            Throwable x = e.getNestedException();
+            if(x instanceof HandlerException) {
+                x = x.getCause();
+                if(x instanceof ProcessingException)    throw (ProcessingException)x;
+                if(x instanceof IOException)            throw (IOException)x;
+                throw (ParseException)x;
+            }
+            if(x instanceof RuntimeException)
+                throw (RuntimeException)x;
+            if(x instanceof IOException)
+                throw (IOException)x;    // connection dropped in the middle
+            SAXException se = new SAXException(e);
+            se.initCause(e);
+            throw se;
+        } finally {
+            drain(body.in);
+        }
+    }
+
+    /**
+     * Carries an exception thrown by a {@link HtmlExtractor.Handler} through the parser.
+     */
+    private static final class HandlerException extends RuntimeException {
+        HandlerException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Parsed XML document and the number of bytes it was parsed from, after decompression.
+     */
+    static final class SizedDocument {
+        final Document document;
+        final long size;
+
+        SizedDocument(Document document, long size) {
+            this.document = document;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Identifies the requests that can share the result. Pages are rendered differently
+     * depending on who's looking, so the user is a part of the key, but the session isn't,
+     * so {@link JavaNetPool} sessions of the same user share the result. When we don't
+     * know who the user is, such as while {@link JavaNet#connectByClone(JavaNet)} is finding it out,
+     * only the same session shares the result.
+     */
+    private String key(String kind, String url) {
+        String who = root.getUserName();
+        if(who==null) {
+            String session = root.getSessionID();
+            who = session!=null ? "session:"+session : "";
+        } else {
+            who = "user:"+who;
+        }
+        return kind+' '+who+' '+root.rewrite(url);
+    }
+
+    /**
+     * Requests in progress, across all the {@link JavaNet}s.
+     */
+    private static final SingleFlight<Document> IN_FLIGHT = new SingleFlight<Document>();
+    private static final SingleFlight<SizedDocument> XML_IN_FLIGHT = new SingleFlight<SizedDocument>();
+
+    /**
+     * Response body, either from the server or from the {@link PageCache}.
+     */
+    private static final class Body {
+        final InputStream in;
+        final String url;
+        final String contentType;
+        final Metrics.Recorder recorder;
+        /**
+         * Released when {@link #in} is closed. Null if none is held.
+         */
+        final Slot slot;
+
+        Body(InputStream in, String url, String contentType, Metrics.Recorder recorder, Slot slot) {
+            this.in = in;
+            this.url = url;
+            this.contentType = contentType;
+            this.recorder = recorder;
+            this.slot = slot;
+        }
+
+        /**
+         * Checks if the server says this is a HTML page.
+         */
+        boolean isHtml() {
+            return contentType!=null && contentType.trim().toLowerCase().startsWith("text/html");
+        }
+
+        /**
+         * Feeds the body to a XML parser, which detects the encoding by itself if the server didn't tell us.
+         */
+        InputSource toInputSource(InputStream in) {
+            return toInputSource(new NoClose(in),getCharset(contentType));
+        }
+
+        /**
+         * Feeds the body to NekoHTML. If the server didn't tell us the encoding, this looks for it
+         * at the beginning of the body, so that NekoHTML decodes the bytes right the first time,
+         * instead of starting with its default and then switching when it sees the meta tag.
+         */
+        InputSource toHtmlInputSource(InputStream in) throws IOException {
+            String charset = getCharset(contentType);
+            if(charset!=null)
+                return toInputSource(new NoClose(in),charset);
+            BufferedInputStream bin = new BufferedInputStream(new NoClose(in),SNIFF_SIZE);
+            return toInputSource(bin,sniffCharset(bin));
+        }
+
+        private InputSource toInputSource(InputStream in, String charset) {
+            InputSource src = new InputSource(in);
+            src.setSystemId(url);
+            if(charset!=null)
+                src.setEncoding(charset);
+            return src;
+        }
+    }
+
+    /**
+     * Parsers close the stream when they are done, but we still need to drain it.
+     */
+    private static final class NoClose extends FilterInputStream {
+        NoClose(InputStream in) {
+            super(in);
+        }
+
+        public void close() {}
+    }
+
+    /**
+     * Determines the encoding of a HTML page from its first few bytes,
+     * by looking at the XML declaration and the meta tag.
+     * The stream is rewound to where it was.
+     *
+     * @return
+     *      null if unknown.
+     */
+    static String sniffCharset(BufferedInputStream in) throws IOException {
+        byte[] head = new byte[SNIFF_SIZE];
+        in.mark(SNIFF_SIZE);
+        int len = 0;
+        try {
+            int n;
+            while(len<head.length && (n=in.read(head,len,head.length-len))>0)
+                len += n;
+        } finally {
+            in.reset();
+        }
+
+        // NekoHTML handles the byte order mark by itself, but only when the encoding isn't given
+        if(len>=3 && (head[0]&0xFF)==0xEF && (head[1]&0xFF)==0xBB && (head[2]&0xFF)==0xBF)
+            return null;
+        if(len>=2 && ((head[0]&0xFF)==0xFE && (head[1]&0xFF)==0xFF || (head[0]&0xFF)==0xFF && (head[1]&0xFF)==0xFE))
+            return null;
+
+        // ISO-8859-1 maps bytes to chars one to one, and the markup we look for is ASCII
+        String s = new String(head,0,len,"ISO-8859-1");
+        Matcher m = XML_ENCODING.matcher(s);
+        if(m.find())
+            return m.group(1);
+        m = META_CHARSET.matcher(s);
+        if(m.find())
+            return m.group(1);
+        return null;
+    }
+
+    /**
+     * How much of the page is looked at to find its encoding.
+     */
+    private static final int SNIFF_SIZE = 2048;
+
+    private static final Pattern XML_ENCODING = Pattern.compile("^<\\?xml[^>]*encoding\\s*=\\s*[\"']([A-Za-z0-9._:-]+)");
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]*charset\\s*=\\s*[\"']?([A-Za-z0-9._:-]+)",Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Makes a GET request, checks the response code, and obtains the (decoded) response body.
+     */
+    private Body get(String url) throws IOException, ProcessingException {
+        Metrics.Recorder recorder = Metrics.forRequest(url);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Body body = send(url,recorder);
+            failed = false;
+
+            FixtureStore store = root.getRecorder();
+            if(store!=null) {
+                // record what the caller sees, even if it came from the page cache
+                Map<String,String> noHeaders = Collections.emptyMap();
+                body = new Body(store.record("GET",url,200,body.contentType,noHeaders,body.in),body.url,body.contentType,recorder,body.slot);
+            }
+            return body;
+        } finally {
+            recorder.record(start,failed);
+        }
+    }
+
+    private Body send(String url, Metrics.Recorder recorder) throws IOException, ProcessingException {
+        HttpURLConnection con = (HttpURLConnection)new URL(root.rewrite(url)).openConnection(root.getProxy());
+        con.setRequestProperty("Accept-Encoding","gzip");
+        String session = root.getSessionID();
+        if(session!=null)
+            con.setRequestProperty("Cookie","JSESSIONID="+session);
+
+        PageCache cache = root.getPageCache();
+        String user = root.getUserName();
+        PageCache.Entry cached = null;
+        Slot slot = null;
+        boolean failed = true;
+        try {
+            if(cache!=null) {
+                cached = cache.get(user,url);
+                if(cached!=null) {
+                    if(cached.etag!=null)
+                        con.setRequestProperty("If-None-Match",cached.etag);
+                    if(cached.lastModified!=null)
+                        con.setRequestProperty("If-Modified-Since",cached.lastModified);
+                }
+            }
+
+            slot = new Slot(url,RequestGovernor.of(con.getURL().getHost(),root.isPaced()));
+            int code = con.getResponseCode();
+            failed = RequestGovernor.isFailure(code);
+            if(code==HttpURLConnection.HTTP_NOT_MODIFIED && cached!=null) {
+                drain(con.getInputStream());
+                Body body = new Body(cached.body,url,cached.contentType,recorder,null);
+                cached = null;  // handed over to the body
+                return body;
+            }
+            if(code!=200) {
+                // consume the error body so that the connection can be reused
+                InputStream err = con.getErrorStream();
+                if(err!=null)
+                    drain(err);
+                if(failed)
+                    // report it as an IOException so that RetryPolicy considers it transient
+                    throw new IOException("request failed "+code+" "+con.getResponseMessage());
+                throw new ProcessingException("request failed "+con.getResponseMessage());
+            }
+
+            // the server is still busy with the request until the whole body is sent,
+            // so the slot is held until the caller closes the body
+            InputStream in = slot.hold(con.getInputStream());
+            if("gzip".equalsIgnoreCase(con.getContentEncoding()))
+                in = new GZIPInputStream(in);
+            in = new Counter(in,recorder);
+
+            if(cache!=null) {
+                String etag = con.getHeaderField("ETag");
+                String lastModified = con.getHeaderField("Last-Modified");
+                if(etag!=null || lastModified!=null)
+                    in = cache.store(user,url,etag,lastModified,con.getContentType(),in);
+            }
+
+            Body body = new Body(in,con.getURL().toExternalForm(),con.getContentType(),recorder,slot.governor!=null ? slot : null);
+            slot = null;    // handed over to the body
+            return body;
+        } finally {
+            if(slot!=null)
+                slot.release(failed);
+            if(cached!=null)
+                cached.body.close();
+        }
+    }
+
+    /**
+     * A request in progress, under the control of {@link RequestGovernor}.
+     */
+    private static final class Slot {
+        private final String url;
+        private final RequestGovernor governor;
+        private final Thread owner = Thread.currentThread();
+        private long start;
+        private boolean released;
+
+        /**
+         * Waits for the governor to let a request through.
+         *
+         * @param governor
+         *      null if the request isn't paced.
+         */
+        Slot(String url, RequestGovernor governor) throws IOException {
+            this.url = url;
+            this.governor = governor;
+            this.start = governor!=null ? governor.begin(RequestPriority.current()) : 0;
+        }
+
+        synchronized void release(boolean failed) {
+            if(released || governor==null)  return;
+            released = true;
+            governor.end(url,start,failed,owner);
+        }
+
+        /**
+         * Leaves the given time out of the latency of this request.
+         */
+        synchronized void exclude(long nanos) {
+            start += nanos;
+        }
+
+        /**
+         * Releases this slot when the given response body is closed.
+         * A read error counts as a failure.
+         */
+        InputStream hold(InputStream in) {
+            if(governor==null)  return in;
+            return new FilterInputStream(in) {
+                private boolean failed;
+
+                public int read() throws IOException {
+                    try {
+                        return super.read();
+                    } catch (IOException e) {
+                        failed = true;
+                        throw e;
+                    }
+                }
+
+                public int read(byte[] b, int off, int len) throws IOException {
+                    try {
+                        return super.read(b,off,len);
+                    } catch (IOException e) {
+                        failed = true;
+                        throw e;
+                    }
+                }
+
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release(failed);
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * Remembers the last few bytes that went through, to detect truncated pages.
+     */
+    private static final class Tail extends FilterInputStream {
+        private final byte[] buf = new byte[64];
+        private int pos;
+        private boolean full;
+
+        Tail(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int ch = super.read();
+            if(ch>=0)   record(ch);
+            return ch;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b,off,len);
+            for( int i=0; i<n; i++ )
+                record(b[off+i]);
+            return n;
+        }
+
+        private void record(int b) {
+            buf[pos++] = (byte)b;
+            if(pos==buf.length) {
+                pos = 0;
+                full = true;
+            }
+        }
+
+        /**
+         * Checks if the stream ended with the given ASCII token, ignoring case and trailing whitespace.
+         */
+        boolean endsWith(String token) {
+            StringBuilder s = new StringBuilder();
+            int len = full ? buf.length : pos;
+            for( int i=0; i<len; i++ )
+                s.append((char)(buf[((full?pos:0)+i)%buf.length]&0xFF));
+            return s.toString().trim().toLowerCase().endsWith(token);
+        }
+    }
+
+    /**
+     * Counts the bytes that went through.
+     */
+    private static final class Counter extends FilterInputStream {
+        private long count;
+        /**
+         * If non-null, the count is reported here when the stream is closed.
+         */
+        private Metrics.Recorder recorder;
+
+        Counter(InputStream in) {
+            super(in);
+        }
+
+        Counter(InputStream in, Metrics.Recorder recorder) {
+            super(in);
+            this.recorder = recorder;
+        }
+
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if(recorder!=null) {
+                    recorder.addBytes(count);
+                    recorder = null;
+                }
+            }
+        }
+
+        public int read() throws IOException {
+            int ch = super.read();
+            if(ch>=0)   count++;
+            return ch;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b,off,len);
+            if(n>0)     count+=n;
+            return n;
+        }
+
+        public long skip(long n) throws IOException {
+            long r = super.skip(n);
+            count += r;
+            return r;
+        }
+    }
+
+    /**
+     * Extracts the charset parameter from the content type header, if any.
+     */
+    static String getCharset(String contentType) {
+        if(contentType==null)   return null;
+        int idx = contentType.toLowerCase().indexOf("charset=");
+        if(idx<0)   return null;
+        String cs = contentType.substring(idx+"charset=".length());
+        int end = cs.indexOf(';');
+        if(end>=0)  cs = cs.substring(0,end);
+        cs = cs.trim();
+        if(cs.startsWith("\"") && cs.endsWith("\"") && cs.length()>=2)
+            cs = cs.substring(1,cs.length()-1);
+        return cs.length()>0 ? cs : null;
+    }
+
+    /**
+     * Reads the rest of the stream and closes it.
+     * {@link HttpURLConnection} only returns the connection to the keep-alive cache
+     * when the body is fully read.
+     */
+    private static void drain(InputStream in) throws IOException {
+        try {
+            skipToEnd(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void skipToEnd(InputStream in) throws IOException {
+        byte[] buf = new byte[8192];
+        while(in.read(buf)>=0)
+            ;
+    }
+
+    private static final EntityResolver NO_DTD = new EntityResolver() {
+        public InputSource resolveEntity(String publicId, String systemId) {
+            return new InputSource(new ByteArrayInputStream(new byte[0]));
+        }
+    };
+}
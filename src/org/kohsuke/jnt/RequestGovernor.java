@@ -0,0 +1,270 @@
+package org.kohsuke.jnt;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Paces the requests to one site, across all the {@link JavaNet} instances in the JVM
+ * that {@link JavaNet#setPaced(boolean) opted in}.
+ *
+ * <p>
+ * A site is a registrable domain, so all the <tt>*.dev.java.net</tt> hosts share one governor.
+ * Two things are enforced. One is a token bucket, which caps the request rate
+ * while allowing short bursts. The other is a limit on the number of concurrent requests,
+ * which adapts to the server with AIMD: it grows by one for every "window" of requests that
+ * completed normally, and it's cut in half when a request fails or takes
+ * much longer than what the same kind of request normally takes. Kinds of requests are told apart
+ * by {@link Metrics#toPattern(String) their URL patterns}, since for example xml.cgi is always slower
+ * than a member list.
+ * This keeps the throughput as high as the server allows, without tripping its throttling.
+ *
+ * <p>
+ * Requests wait in the lane of their {@link RequestPriority}. When both lanes have requests waiting,
+ * the next request to go is picked by stride scheduling, so that each lane gets its
+ * {@link RequestPriority#weight share}, and a lane that was idle doesn't get to catch up
+ * on the share it didn't use. On top of that, {@link RequestPriority#BULK} requests never take the last
+ * available connection, so an interactive request only waits for the next request to complete at worst.
+ *
+ * <p>
+ * A thread that is already in the middle of a request, such as one that streams a response to a visitor
+ * which makes requests of its own, is not held back by the concurrency limit or the lanes, since the
+ * connection it waits for might be the one it's holding. Its requests still take tokens from the bucket.
+ *
+ * <p>
+ * The defaults can be changed by the system properties
+ * <tt>org.kohsuke.jnt.RequestGovernor.rate</tt> (requests per second),
+ * <tt>org.kohsuke.jnt.RequestGovernor.burst</tt>, and
+ * <tt>org.kohsuke.jnt.RequestGovernor.maxConcurrency</tt>.
+ * When the rate is set, it applies to all the sessions regardless of {@link JavaNet#setPaced(boolean)},
+ * and a rate of 0 disables the governor altogether.
+ */
+final class RequestGovernor {
+    private final String site;
+
+    // token bucket
+    private final double rate;
+    private final double burst;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    // AIMD concurrency limit
+    private double limit = INITIAL_CONCURRENCY;
+    private int inFlight;
+    /**
+     * Smallest latency recently seen for each URL pattern, in nanoseconds, which approximates
+     * how fast the site responds to such requests when it's not under stress.
+     */
+    private final Map<String,Double> baselines = new HashMap<String,Double>();
+    private long lastDecrease;
+    /**
+     * Threads with requests in progress, to the number of such requests.
+     */
+    private final Map<Thread,Integer> holders = new HashMap<Thread,Integer>();
+
+    // stride scheduling between lanes, indexed by RequestPriority.ordinal()
+    private final int[] waiting = new int[LANES.length];
+    /**
+     * How far each lane has advanced. The lane that is the least advanced goes next.
+     */
+    private final double[] pass = new double[LANES.length];
+    /**
+     * Pass of the request admitted last, where a lane that becomes busy again starts from.
+     */
+    private double virtualTime;
+
+    private RequestGovernor(String site, double rate, double burst) {
+        this.site = site;
+        this.rate = rate;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    /**
+     * Gets the governor for the given host.
+     *
+     * @param paced
+     *      {@link JavaNet#isPaced()} of the session making the request.
+     * @return
+     *      null if the governor is disabled.
+     */
+    static RequestGovernor of(String host, boolean paced) {
+        if(RATE_PROPERTY!=null ? RATE<=0 : !paced)
+            return null;
+        String site = getSite(host);
+        synchronized(GOVERNORS) {
+            RequestGovernor g = GOVERNORS.get(site);
+            if(g==null)
+                GOVERNORS.put(site,g=new RequestGovernor(site,RATE,BURST));
+            return g;
+        }
+    }
+
+    /**
+     * Gets the registrable domain of the host, such as "java.net" for "glassfish.dev.java.net".
+     * This assumes that the domain is the last two labels, which is the case for java.net.
+     */
+    static String getSite(String host) {
+        host = host.toLowerCase();
+        if(host.indexOf(':')>=0 || host.matches("[0-9.]+"))
+            return host;    // IP address
+        int last = host.lastIndexOf('.');
+        if(last<0)
+            return host;
+        int idx = host.lastIndexOf('.',last-1);
+        return idx<0 ? host : host.substring(idx+1);
+    }
+
+    /**
+     * Waits until a request can be made to the host.
+     *
+     * @param priority
+     *      the lane the request waits in.
+     * @return
+     *      the time stamp to be passed to {@link #end(String, long, boolean, Thread)}.
+     */
+    synchronized long begin(RequestPriority priority) throws InterruptedIOException {
+        Thread self = Thread.currentThread();
+        Integer held = holders.get(self);
+        int lane = priority.ordinal();
+        if(waiting[lane]++==0)
+            pass[lane] = Math.max(pass[lane],virtualTime);
+        try {
+            while(true) {
+                if(held!=null || hasConnection(priority) && isTurnOf(lane)) {
+                    refill();
+                    if(tokens>=1)
+                        break;
+                    // wait until the next token arrives
+                    long nanos = (long)((1-tokens)/rate*1e9);
+                    wait(Math.max(1,nanos/1000000));
+                } else {
+                    wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            InterruptedIOException x = new InterruptedIOException("interrupted while waiting to talk to "+site);
+            x.initCause(e);
+            throw x;
+        } finally {
+            waiting[lane]--;
+        }
+
+        tokens--;
+        inFlight++;
+        holders.put(self,held!=null ? held+1 : 1);
+        virtualTime = pass[lane];
+        pass[lane] += 1.0/priority.weight;
+        // it may be the other lane's turn now
+        notifyAll();
+        return System.nanoTime();
+    }
+
+    /**
+     * Can a request in the given lane be sent now, as far as the concurrency limit goes?
+     */
+    private boolean hasConnection(RequestPriority priority) {
+        int max = Math.max(1,(int)limit);
+        if(priority==RequestPriority.BULK && max>1)
+            max--;  // reserved for interactive requests
+        return inFlight<max;
+    }
+
+    /**
+     * Is the given lane the least advanced among those that have requests ready to go?
+     * Ties go to the higher priority.
+     */
+    private boolean isTurnOf(int lane) {
+        for( int o=0; o<LANES.length; o++ ) {
+            if(o==lane || waiting[o]==0 || !hasConnection(LANES[o]))
+                continue;
+            if(pass[o]<pass[lane] || (pass[o]==pass[lane] && o<lane))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reports the completion of a request made by the current thread,
+     * just like {@link #end(String, long, boolean, Thread)}.
+     */
+    synchronized void end(String url, long start, boolean failed) {
+        end(url,start,failed,Thread.currentThread());
+    }
+
+    /**
+     * Reports the completion of a request.
+     *
+     * @param url
+     *      the URL that the request was made to.
+     * @param start
+     *      the value returned from {@link #begin(RequestPriority)}.
+     * @param failed
+     *      true if the request failed in a way that suggests the server is in trouble,
+     *      such as I/O errors and 5xx status codes.
+     * @param owner
+     *      the thread that called {@link #begin(RequestPriority)}.
+     */
+    synchronized void end(String url, long start, boolean failed, Thread owner) {
+        long now = System.nanoTime();
+        double latency = now-start;
+        inFlight--;
+        Integer held = holders.get(owner);
+        if(held!=null && held>1)
+            holders.put(owner,held-1);
+        else
+            holders.remove(owner);
+
+        String pattern = Metrics.toPattern(url);
+        Double b = baselines.get(pattern);
+        double baseline = b!=null ? b : latency;
+        if(!failed) {
+            if(latency<baseline)
+                baseline = latency;
+            else
+                baseline += (latency-baseline)/100;  // let it drift up slowly
+            baselines.put(pattern,baseline);
+        }
+
+        if(failed || latency>baseline*CONGESTION_FACTOR) {
+            // decrease at most once per round trip, since requests that are already
+            // in flight were sent under the old limit.
+            if(now-lastDecrease>baseline) {
+                limit = Math.max(1,limit/2);
+                lastDecrease = now;
+            }
+        } else {
+            limit = Math.min(MAX_CONCURRENCY,limit+1/limit);
+        }
+
+        notifyAll();
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst,tokens+(now-lastRefill)/1e9*rate);
+        lastRefill = now;
+    }
+
+    /**
+     * Is the given HTTP status code a sign of an overloaded server?
+     */
+    static boolean isFailure(int responseCode) {
+        return responseCode>=500 || responseCode==429;
+    }
+
+    private static final RequestPriority[] LANES = RequestPriority.values();
+
+    private static final Map<String,RequestGovernor> GOVERNORS = new HashMap<String,RequestGovernor>();
+
+    private static final String RATE_PROPERTY = System.getProperty(RequestGovernor.class.getName()+".rate");
+    private static final double RATE = RATE_PROPERTY!=null ? Double.parseDouble(RATE_PROPERTY) : 20;
+    private static final double BURST = Double.parseDouble(System.getProperty(RequestGovernor.class.getName()+".burst","10"));
+    private static final int MAX_CONCURRENCY = Integer.getInteger(RequestGovernor.class.getName()+".maxConcurrency",16);
+    private static final int INITIAL_CONCURRENCY = 4;
+
+    /**
+     * A request that takes this many times longer than the baseline is considered as a sign of congestion.
+     */
+    private static final double CONGESTION_FACTOR = 4;
+}
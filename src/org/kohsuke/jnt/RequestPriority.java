@@ -0,0 +1,68 @@
+package org.kohsuke.jnt;
+
+/**
+ * Lane that the requests made by a thread are scheduled in.
+ *
+ * <p>
+ * When requests from both lanes are waiting to talk to the same host, {@link #INTERACTIVE} requests
+ * are let through first, so that a command a person is waiting for doesn't queue up behind
+ * hundreds of requests of a long-running job in the same JVM. {@link #BULK} requests still get
+ * a fair share, and run at full speed when there's nothing interactive going on.
+ *
+ * <p>
+ * Threads start in the {@link #INTERACTIVE} lane. Long operations of this library, such as
+ * {@link JNIssueTracker#getAll()} and {@link JNMailingList#massSubscribe(java.util.Collection, SubscriptionMode, JNMailingList.ProgressCallback)},
+ * switch to the {@link #BULK} lane by themselves. Applications can do the same for their own jobs:
+ *
+ * <pre>
+ * RequestPriority old = RequestPriority.BULK.makeCurrent();
+ * try {
+ *     ...
+ * } finally {
+ *     old.makeCurrent();
+ * }
+ * </pre>
+ *
+ * <p>
+ * The lanes are only meaningful when requests are paced, which is the case for sessions that
+ * {@link JavaNet#setPaced(boolean) opted in}, or for all the sessions when
+ * <tt>org.kohsuke.jnt.RequestGovernor.rate</tt> is set to a positive value.
+ */
+public enum RequestPriority {
+    INTERACTIVE(4),
+    BULK(1);
+
+    /**
+     * Share of the requests that this lane gets when both lanes have requests waiting.
+     */
+    /*package*/ final int weight;
+
+    RequestPriority(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * Makes the requests from the current thread go through this lane.
+     *
+     * @return
+     *      the lane that was used until now, so that the caller can restore it.
+     */
+    public RequestPriority makeCurrent() {
+        RequestPriority old = current();
+        CURRENT.set(this);
+        return old;
+    }
+
+    /**
+     * Gets the lane of the current thread.
+     */
+    public static RequestPriority current() {
+        return CURRENT.get();
+    }
+
+    private static final ThreadLocal<RequestPriority> CURRENT = new ThreadLocal<RequestPriority>() {
+        protected RequestPriority initialValue() {
+            return INTERACTIVE;
+        }
+    };
+}
@@ -0,0 +1,133 @@
+package org.kohsuke.jnt;
+
+import com.meterware.httpunit.HttpException;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Determines how requests that failed for a transient reason are retried.
+ *
+ * <p>
+ * When set to {@link JavaNet#setRetryPolicy(RetryPolicy)}, page fetches that fail
+ * with an I/O error, a 5xx status code, or a truncated page are retried individually,
+ * with exponentially growing delay and random jitter in between, instead of failing the whole
+ * operation. This only applies to requests that are safe to repeat (GETs made to
+ * read pages); form submissions, which mutate the state on the server,
+ * are never retried.
+ *
+ * <p>
+ * By default, {@link JavaNet} doesn't retry.
+ */
+public final class RetryPolicy {
+    private final int maxAttempts;
+    private final long initialDelay;
+    private final long maxDelay;
+
+    /**
+     * @param maxAttempts
+     *      Maximum number of times a request is attempted, including the first one.
+     * @param initialDelay
+     *      Delay in milliseconds before the first retry. It doubles for every subsequent retry.
+     * @param maxDelay
+     *      Upper bound of the delay in milliseconds.
+     */
+    public RetryPolicy(int maxAttempts, long initialDelay, long maxDelay) {
+        if(maxAttempts<1)
+            throw new IllegalArgumentException("maxAttempts must be positive: "+maxAttempts);
+        this.maxAttempts = maxAttempts;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Retries up to the given number of attempts, starting with 1 second delay, up to 30 seconds.
+     */
+    public RetryPolicy(int maxAttempts) {
+        this(maxAttempts,1000,30*1000);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Computes the delay before the given retry.
+     *
+     * @param retry
+     *      1 for the first retry, 2 for the second, and so on.
+     */
+    long getDelay(int retry) {
+        long d = Math.min(maxDelay,initialDelay<<Math.min(retry-1,30));
+        // "equal jitter" so that concurrent clients that failed together don't come back together
+        return d/2 + (long)(RANDOM.nextDouble()*(d/2));
+    }
+
+    /**
+     * A request that's safe to repeat.
+     */
+    interface Request<T> {
+        /**
+         * @param lastAttempt
+         *      true if this attempt won't be retried no matter how it fails.
+         *      This is used to accept a suspicious but possibly good response
+         *      when there's nothing more we can do.
+         */
+        T call(boolean lastAttempt) throws IOException, SAXException, ProcessingException;
+    }
+
+    /**
+     * Executes the request, retrying it according to the policy.
+     *
+     * @param policy
+     *      null to execute the request just once.
+     */
+    static <T> T execute(RetryPolicy policy, String url, Request<T> request) throws IOException, SAXException, ProcessingException {
+        int max = policy==null ? 1 : policy.maxAttempts;
+        for( int attempt=1; ; attempt++ ) {
+            boolean last = attempt>=max;
+            try {
+                return request.call(last);
+            } catch (IOException e) {
+                if(last || !isTransient(e))   throw e;
+                policy.backoff(attempt,url,e);
+            } catch (HttpException e) {
+                if(last || !isTransient(e))   throw e;
+                policy.backoff(attempt,url,e);
+            }
+        }
+    }
+
+    private void backoff(int attempt, String url, Exception cause) throws InterruptedIOException {
+        long delay = getDelay(attempt);
+        LOGGER.log(Level.FINE,"Retrying "+url+" in "+delay+"ms",cause);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            InterruptedIOException x = new InterruptedIOException("interrupted while retrying "+url);
+            x.initCause(cause);
+            throw x;
+        }
+    }
+
+    /**
+     * Is this failure likely to go away if we just try again?
+     */
+    static boolean isTransient(Exception e) {
+        if(e instanceof InterruptedIOException)
+            return false;   // somebody wants us to stop
+        if(e instanceof IOException)
+            return true;
+        if(e instanceof HttpException)
+            return RequestGovernor.isFailure(((HttpException)e).getResponseCode());
+        return false;
+    }
+
+    private static final Random RANDOM = new Random();
+
+    private static final Logger LOGGER = Logger.getLogger(RetryPolicy.class.getName());
+}
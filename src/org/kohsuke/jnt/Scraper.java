@@ -25,8 +25,13 @@ abstract class Scraper<T> {
     }
 
     public final T run() throws ProcessingException {
+        Metrics.Recorder recorder = Metrics.forScraper(this);
+        long start = System.nanoTime();
+        boolean failed = true;
         try {
-            return scrape();
+            T r = scrape();
+            failed = false;
+            return r;
         } catch (RuntimeException e) {
             throw new ProcessingException(errorSummary+e.getMessage(),e);
         } catch (SAXException e) {
@@ -37,6 +42,8 @@ abstract class Scraper<T> {
             throw new ProcessingException(errorSummary+e.getMessage(),e);
         } catch (ProcessingException e) {
             throw new ProcessingException(errorSummary+e.getMessage(),e);
+        } finally {
+            recorder.record(start,failed);
         }
     }
 
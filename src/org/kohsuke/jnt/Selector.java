@@ -0,0 +1,355 @@
+package org.kohsuke.jnt;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.XPath;
+import org.dom4j.tree.DefaultDocument;
+import org.xml.sax.InputSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled XPath expression used for scraping.
+ *
+ * <p>
+ * {@link Node#selectNodes(String)} compiles the expression every time it's called.
+ * Instead, scraping code should obtain a {@link Selector} from {@link #of(String)},
+ * which compiles each expression once and keeps it for reuse. Selectors are immutable and
+ * can be used from multiple threads.
+ *
+ * <p>
+ * Expressions of the form <tt>//TAG[@attr='value']</tt>, optionally followed by a path
+ * like <tt>//TAG[@id='x']/TABLE//A</tt>, don't scan the whole tree when they are evaluated
+ * against an HTML page parsed by {@link Util#getDom4j(InputSource)}. Instead, the first such
+ * lookup on a page indexes its elements by name and by <tt>id</tt>, and the rest of the
+ * lookups on the same page use that index. This assumes that pages aren't
+ * modified after they are parsed, which is the case for the pages being scraped.
+ *
+ * <p>
+ * Selectors can also be used with {@link HtmlExtractor}, which matches elements while the page
+ * is being parsed, as long as they are in the subset that {@link #matches(List)} supports.
+ */
+final class Selector {
+    private final String expression;
+    private final XPath xpath;
+
+    /**
+     * For the indexed lookup, the element name, the attribute name, and its value.
+     * Null if this expression is not of that form.
+     */
+    private final String tag, attribute, value;
+    /**
+     * For the indexed lookup, the path evaluated from the indexed element. Null if none.
+     */
+    private final XPath rest;
+
+    /**
+     * For {@link #matches(List)}. Null until first needed.
+     */
+    private volatile Steps steps;
+
+    private Selector(String expression) {
+        this.expression = expression;
+        this.xpath = DocumentHelper.createXPath(expression);
+
+        Matcher m = INDEXABLE.matcher(expression);
+        if(m.matches() && !ESCAPES.matcher(m.group(4)).find()) {
+            tag = m.group(1);
+            attribute = m.group(2);
+            value = m.group(3);
+            rest = m.group(4).length()>0 ? DocumentHelper.createXPath('.'+m.group(4)) : null;
+        } else {
+            tag = attribute = value = null;
+            rest = null;
+        }
+    }
+
+    /**
+     * Gets the selector for the given expression.
+     */
+    static Selector of(String expression) {
+        Selector s = REGISTRY.get(expression);
+        if(s==null) {
+            s = new Selector(expression);
+            Selector prev = REGISTRY.putIfAbsent(expression,s);
+            if(prev!=null)  s = prev;
+        }
+        return s;
+    }
+
+    /**
+     * Evaluates this expression and returns the matching nodes in the document order.
+     */
+    @SuppressWarnings({"unchecked"})
+    <T extends Node> List<T> selectNodes(Node context) {
+        List<Element> candidates = candidates(context);
+        if(candidates==null)
+            return xpath.selectNodes(context);
+        if(rest==null)
+            return (List<T>)new ArrayList<Element>(candidates);
+        switch(candidates.size()) {
+        case 0:
+            return new ArrayList<T>();
+        case 1:
+            return rest.selectNodes(candidates.get(0));
+        default:
+            // results from different elements may overlap or be out of order
+            return xpath.selectNodes(context);
+        }
+    }
+
+    /**
+     * Evaluates this expression and returns the first matching node in the document order.
+     *
+     * @return
+     *      null if nothing matches.
+     */
+    @SuppressWarnings({"unchecked"})
+    <T extends Node> T selectSingleNode(Node context) {
+        List<Element> candidates = candidates(context);
+        if(candidates==null || (rest!=null && candidates.size()>1))
+            return (T)xpath.selectSingleNode(context);
+        if(candidates.isEmpty())
+            return null;
+        if(rest==null)
+            return (T)candidates.get(0);
+        return (T)rest.selectSingleNode(candidates.get(0));
+    }
+
+    /**
+     * Uses the index to find the elements that match the <tt>//TAG[@attr='value']</tt> part.
+     *
+     * @return
+     *      null if the index can't be used.
+     */
+    private List<Element> candidates(Node context) {
+        if(tag==null)
+            return null;
+        Document doc = context.getDocument();
+        if(!(doc instanceof IndexedDocument))
+            return null;
+        return ((IndexedDocument)doc).getIndex().find(tag,attribute,value);
+    }
+
+    /**
+     * Checks if the last element of the given list, which are the open elements of a page being parsed
+     * from the root, matches this expression.
+     *
+     * <p>
+     * Only the ancestors of the element are known at that point, so this supports a small subset of XPath:
+     * location steps separated by '/' or '//', where each step is an element name (or '*') with
+     * an optional attribute test, such as <tt>//DIV[@id='adhocqueryresults']//TR</tt>.
+     * A relative path is the same as the one that starts with '//'.
+     *
+     * @throws IllegalArgumentException
+     *      if this expression is outside that subset.
+     */
+    boolean matches(List<Element> stack) {
+        return getSteps().matches(stack);
+    }
+
+    /**
+     * Makes sure that {@link #matches(List)} can be used.
+     *
+     * @throws IllegalArgumentException
+     *      if it can't.
+     */
+    void checkStreamable() {
+        getSteps();
+    }
+
+    private Steps getSteps() {
+        Steps s = steps;
+        if(s==null)
+            steps = s = new Steps(expression);
+        return s;
+    }
+
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * Compiled form of an expression for {@link #matches(List)}.
+     */
+    private static final class Steps {
+        private final String[] names;
+        private final String[] attNames;
+        private final String[] attValues;
+        /**
+         * True if the step is preceded by '//', false if by '/'.
+         */
+        private final boolean[] descendant;
+
+        Steps(String path) {
+            List<String> steps = new ArrayList<String>();
+            List<Boolean> axes = new ArrayList<Boolean>();
+
+            int i=0;
+            while(i<path.length()) {
+                if(path.startsWith("//",i)) {
+                    axes.add(true);
+                    i+=2;
+                } else if(path.charAt(i)=='/') {
+                    axes.add(false);
+                    i++;
+                } else {
+                    if(!steps.isEmpty())
+                        throw new IllegalArgumentException("Unexpected character at "+i+" in "+path);
+                    axes.add(true);    // relative path is the same as '//'
+                }
+                int end = i;
+                int depth = 0;
+                while(end<path.length() && (depth>0 || path.charAt(end)!='/')) {
+                    if(path.charAt(end)=='[')   depth++;
+                    if(path.charAt(end)==']')   depth--;
+                    end++;
+                }
+                steps.add(path.substring(i,end));
+                i = end;
+            }
+
+            int len = steps.size();
+            names = new String[len];
+            attNames = new String[len];
+            attValues = new String[len];
+            descendant = new boolean[len];
+            for( int j=0; j<len; j++ ) {
+                Matcher m = STEP.matcher(steps.get(j));
+                if(!m.matches())
+                    throw new IllegalArgumentException("Unsupported step "+steps.get(j)+" in "+path);
+                descendant[j] = axes.get(j);
+                names[j] = m.group(1);
+                attNames[j] = m.group(2);
+                attValues[j] = m.group(3)!=null ? m.group(3) : m.group(4);
+            }
+            if(len==0)
+                throw new IllegalArgumentException("Empty path");
+        }
+
+        boolean matches(List<Element> stack) {
+            return match(names.length-1,stack,stack.size()-1);
+        }
+
+        private boolean match(int step, List<Element> stack, int pos) {
+            if(!test(step,stack.get(pos)))
+                return false;
+            if(step==0)
+                return descendant[0] || pos==0;
+
+            if(descendant[step]) {
+                for( int p=pos-1; p>=0; p-- )
+                    if(match(step-1,stack,p))
+                        return true;
+                return false;
+            } else {
+                return pos>0 && match(step-1,stack,pos-1);
+            }
+        }
+
+        private boolean test(int step, Element e) {
+            if(!names[step].equals("*") && !names[step].equals(e.getName()))
+                return false;
+            return attNames[step]==null || attValues[step].equals(e.attributeValue(attNames[step]));
+        }
+    }
+
+    /**
+     * Elements of a document by their name and by their <tt>id</tt>.
+     */
+    private static final class Index {
+        private final Map<String,List<Element>> byName = new HashMap<String,List<Element>>();
+        private final Map<String,List<Element>> byId = new HashMap<String,List<Element>>();
+
+        private Index(Document doc) {
+            Element root = doc.getRootElement();
+            if(root!=null)
+                add(root);
+        }
+
+        private void add(Element e) {
+            put(byName,e.getName(),e);
+            String id = e.attributeValue("id");
+            if(id!=null)
+                put(byId,id,e);
+            for( int i=0,n=e.nodeCount(); i<n; i++ ) {
+                Node c = e.node(i);
+                if(c instanceof Element)
+                    add((Element)c);
+            }
+        }
+
+        private static void put(Map<String,List<Element>> map, String key, Element e) {
+            List<Element> l = map.get(key);
+            if(l==null)
+                map.put(key,l=new ArrayList<Element>(1));
+            l.add(e);
+        }
+
+        /**
+         * Finds the elements of the given name whose attribute has the given value, in the document order.
+         */
+        List<Element> find(String tag, String attribute, String value) {
+            List<Element> l = attribute.equals("id") ? byId.get(value) : byName.get(tag);
+            if(l==null)
+                return Collections.emptyList();
+            List<Element> r = new ArrayList<Element>(1);
+            for (Element e : l)
+                if(e.getName().equals(tag) && value.equals(e.attributeValue(attribute)))
+                    r.add(e);
+            return r;
+        }
+    }
+
+    /**
+     * Document that carries its own {@link Index}, so that the index goes away together with the document.
+     */
+    private static final class IndexedDocument extends DefaultDocument {
+        private volatile Index index;
+
+        Index getIndex() {
+            Index idx = index;
+            if(idx==null)
+                index = idx = new Index(this);
+            return idx;
+        }
+    }
+
+    /**
+     * Creates documents that support the indexed lookup. Used for parsing HTML pages.
+     */
+    static final DocumentFactory FACTORY = new DocumentFactory() {
+        public Document createDocument() {
+            IndexedDocument doc = new IndexedDocument();
+            doc.setDocumentFactory(this);
+            return doc;
+        }
+    };
+
+    private static final ConcurrentHashMap<String,Selector> REGISTRY = new ConcurrentHashMap<String,Selector>();
+
+    /**
+     * <tt>//TAG[@attr='value']</tt> followed by an optional path.
+     */
+    private static final Pattern INDEXABLE = Pattern.compile("//([A-Za-z][A-Za-z0-9]*)\\[@([A-Za-z-]+)='([^']*)'\\]((?:/.*)?)");
+
+    /**
+     * A step that {@link #matches(List)} supports: a name, optionally with <tt>[@attr='value']</tt>.
+     */
+    private static final Pattern STEP = Pattern.compile("([A-Za-z][A-Za-z0-9]*|\\*)(?:\\[@([A-Za-z-]+)\\s*=\\s*(?:'([^']*)'|\"([^\"]*)\")\\])?");
+
+    /**
+     * Constructs in the rest of the path that can reach outside the indexed element.
+     */
+    private static final Pattern ESCAPES = Pattern.compile("\\||::|\\.\\.|[\\[(=,]\\s*/");
+}
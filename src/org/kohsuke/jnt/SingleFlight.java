@@ -0,0 +1,82 @@
+package org.kohsuke.jnt;
+
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Collapses concurrent executions of the same operation into one.
+ *
+ * <p>
+ * When a thread asks for a key that another thread is already working on,
+ * it waits for that execution to finish and gets the same result, or the same exception,
+ * instead of doing the work again. Once an execution finishes, the next request for
+ * the same key starts a new one, so this is not a cache.
+ *
+ * <p>
+ * Since the result is shared among threads, it must not be modified.
+ */
+final class SingleFlight<V> {
+    private final ConcurrentHashMap<String,Flight<V>> flights = new ConcurrentHashMap<String,Flight<V>>();
+
+    interface Call<V> {
+        V call() throws IOException, SAXException, ProcessingException;
+    }
+
+    private static final class Flight<V> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private V value;
+        private Throwable error;
+
+        V await() throws IOException, SAXException, ProcessingException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for the same request made by another thread");
+            }
+            if(error==null)                         return value;
+            if(error instanceof IOException)        throw (IOException)error;
+            if(error instanceof SAXException)       throw (SAXException)error;
+            if(error instanceof ProcessingException)throw (ProcessingException)error;
+            if(error instanceof RuntimeException)   throw (RuntimeException)error;
+            throw (Error)error;
+        }
+    }
+
+    /**
+     * Executes the call, unless another thread is already executing it for the same key,
+     * in which case this method waits for that execution and returns its outcome.
+     */
+    V execute(String key, Call<V> call) throws IOException, SAXException, ProcessingException {
+        Flight<V> f = new Flight<V>();
+        Flight<V> inFlight = flights.putIfAbsent(key,f);
+        if(inFlight!=null)
+            return inFlight.await();
+
+        try {
+            return f.value = call.call();
+        } catch (IOException e) {
+            f.error = e;
+            throw e;
+        } catch (SAXException e) {
+            f.error = e;
+            throw e;
+        } catch (ProcessingException e) {
+            f.error = e;
+            throw e;
+        } catch (RuntimeException e) {
+            f.error = e;
+            throw e;
+        } catch (Error e) {
+            f.error = e;
+            throw e;
+        } finally {
+            flights.remove(key,f);
+            f.done.countDown();
+        }
+    }
+}
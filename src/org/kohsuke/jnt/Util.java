@@ -4,18 +4,33 @@ import com.meterware.httpunit.WebConversation;
 import com.meterware.httpunit.WebForm;
 import com.meterware.httpunit.WebLink;
 import com.meterware.httpunit.WebResponse;
+import org.apache.xerces.xni.Augmentations;
+import org.apache.xerces.xni.NamespaceContext;
+import org.apache.xerces.xni.QName;
+import org.apache.xerces.xni.XMLAttributes;
+import org.apache.xerces.xni.XMLLocator;
+import org.apache.xerces.xni.XMLString;
+import org.apache.xerces.xni.XNIException;
+import org.apache.xerces.xni.parser.XMLDocumentFilter;
+import org.cyberneko.html.filters.DefaultFilter;
 import org.cyberneko.html.parsers.SAXParser;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.io.SAXReader;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
 
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Utility code.
@@ -66,17 +81,159 @@ class Util {
 
     /**
      * Obtains the HTML of the response as a dom4j document.
+     *
+     * <p>
+     * The parsed document is remembered for each response, so {@link JNObject#checkError(WebResponse)}
+     * and the scraping code that follows it share one parse. Callers must treat the returned
+     * document as read-only.
      */
     static Document getDom4j( WebResponse wr ) throws IOException, SAXException {
+        Document dom = PARSED.get(wr);
+        if(dom==null) {
+            String text = wr.getText();
+            long start = System.nanoTime();
+            dom = getDom4j(new InputSource(new StringReader(text)));
+            Metrics.forRequest(wr.getURL().toExternalForm()).addParseTime(start);
+            PARSED.put(wr,dom);
+        }
+        return dom;
+    }
+
+    /**
+     * Parsed documents of {@link WebResponse}s.
+     * Weak so that the document goes away together with the response.
+     */
+    private static final Map<WebResponse,Document> PARSED = Collections.synchronizedMap(new WeakHashMap<WebResponse,Document>());
+
+    /**
+     * Parses the HTML from the given source as a dom4j document.
+     * The document supports the indexed lookup of {@link Selector}.
+     */
+    static Document getDom4j( InputSource source ) throws SAXException {
+        SAXParser parser = acquireHtmlParser();
         try {
-            return new SAXReader(new SAXParser()).read(new StringReader(wr.getText()));
+            SAXReader reader = new SAXReader(Selector.FACTORY) {
+                protected void configureReader(XMLReader reader, DefaultHandler handler) throws DocumentException {
+                    super.configureReader(reader,handler);
+                    // SAXReader turns this on, but HTML doesn't need namespace processing
+                    try {
+                        reader.setFeature(SAX_NAMESPACES,false);
+                    } catch (SAXException e) {
+                        throw new DocumentException(e);
+                    }
+                }
+            };
+            reader.setXMLReader(parser);
+            return reader.read(source);
         } catch (DocumentException e) {
             SAXException se = new SAXException(e);
             se.initCause(e);
             throw se;
+        } finally {
+            releaseHtmlParser(parser);
+        }
+    }
+
+    /**
+     * Gets a NekoHTML parser configured for java.net pages.
+     *
+     * <p>
+     * Setting up NekoHTML is expensive, so each thread keeps one parser around and reuses it.
+     * The parser must be given back by {@link #releaseHtmlParser(SAXParser)} after use.
+     * Namespace processing is turned off, element names come out in the upper case as usual,
+     * and the contents of <tt>SCRIPT</tt> elements are skipped.
+     */
+    static SAXParser acquireHtmlParser() {
+        SAXParser parser = HTML_PARSER.get();
+        if(parser==null)
+            return createHtmlParser();
+        HTML_PARSER.set(null);  // a parse started while this one is in progress gets its own parser
+        return parser;
+    }
+
+    /**
+     * Returns the parser obtained from {@link #acquireHtmlParser()}, so that it can be reused.
+     */
+    static void releaseHtmlParser(SAXParser parser) {
+        // don't keep the last document reachable from the parser
+        parser.setContentHandler(null);
+        parser.setErrorHandler(null);   // SAXReader sets its content handler here too
+        parser.setDTDHandler(null);
+        parser.setEntityResolver(null);
+        try {
+            parser.setProperty(LEXICAL_HANDLER,null);
+            parser.setProperty(DECL_HANDLER,null);
+        } catch (SAXException e) {
+            return; // can't be reused
+        }
+        HTML_PARSER.set(parser);
+    }
+
+    private static SAXParser createHtmlParser() {
+        SAXParser parser = new SAXParser();
+        try {
+            parser.setFeature(SAX_NAMESPACES,false);
+            parser.setProperty("http://cyberneko.org/html/properties/names/elems","upper");
+            parser.setProperty("http://cyberneko.org/html/properties/filters",new XMLDocumentFilter[]{new ScriptSkipper()});
+        } catch (SAXException e) {
+            throw new AssertionError(e);    // NekoHTML supports all of these
         }
+        return parser;
     }
 
+    /**
+     * Drops the contents of <tt>SCRIPT</tt>, which we never look at, while keeping the element itself.
+     */
+    private static final class ScriptSkipper extends DefaultFilter {
+        private int depth;
+
+        public void startDocument(XMLLocator locator, String encoding, NamespaceContext nscontext, Augmentations augs) throws XNIException {
+            depth = 0;
+            super.startDocument(locator,encoding,nscontext,augs);
+        }
+
+        public void startElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException {
+            if(depth>0)     depth++;
+            else            super.startElement(element,attributes,augs);
+            if(depth==0 && isScript(element))
+                depth = 1;
+        }
+
+        public void emptyElement(QName element, XMLAttributes attributes, Augmentations augs) throws XNIException {
+            if(depth==0)
+                super.emptyElement(element,attributes,augs);
+        }
+
+        public void endElement(QName element, Augmentations augs) throws XNIException {
+            if(depth>1) {
+                depth--;
+                return;
+            }
+            depth = 0;
+            super.endElement(element,augs);
+        }
+
+        public void characters(XMLString text, Augmentations augs) throws XNIException {
+            if(depth==0)
+                super.characters(text,augs);
+        }
+
+        public void comment(XMLString text, Augmentations augs) throws XNIException {
+            if(depth==0)
+                super.comment(text,augs);
+        }
+
+        private static boolean isScript(QName element) {
+            return "SCRIPT".equalsIgnoreCase(element.rawname);
+        }
+    }
+
+    private static final ThreadLocal<SAXParser> HTML_PARSER = new ThreadLocal<SAXParser>();
+
+    private static final String SAX_NAMESPACES = "http://xml.org/sax/features/namespaces";
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+    private static final String DECL_HANDLER = "http://xml.org/sax/properties/declaration-handler";
+
     /**
      * Format all strings in the collection by using the specified separator.
      */
@@ -0,0 +1,524 @@
+package org.kohsuke.jnt.fixture;
+
+import org.kohsuke.jnt.JavaNet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Local, embeddable stand-in for java.net.
+ *
+ * <p>
+ * This server replays the responses recorded in a {@link FixtureStore}, and serves
+ * synthetic pages of arbitrary size (see {@link #addMemberList(String, int)} and others),
+ * optionally with artificial latency. This makes it possible to test and benchmark
+ * the scraping code offline. Synthetic pages come with an <tt>ETag</tt>, and conditional
+ * requests for unchanged pages get 304, just like from a {@link org.kohsuke.jnt.PageCache}-friendly server.
+ *
+ * <p>
+ * java.net URLs are hard-coded throughout the object model, so instead of changing them,
+ * the server acts as an HTTP proxy. {@link #connect()} returns a {@link JavaNet} that
+ * {@link JavaNet#useFixtureServer(String, int) sends everything in plain HTTP through this server},
+ * and the server rewrites <tt>https://</tt> links in the pages it serves, so that the
+ * links and forms followed from them stay on the server, too.
+ *
+ * <pre>
+ * FixtureServer server = new FixtureServer(new FixtureStore(new File("fixtures")));
+ * server.addMemberList("glassfish",10000);
+ * server.start();
+ * JavaNet jn = server.connect();
+ * jn.getProject("glassfish").getMembership().getMembers();
+ * </pre>
+ */
+public final class FixtureServer {
+    private final FixtureStore store;
+
+    /**
+     * Synthetic pages, keyed by the URL without the query string.
+     */
+    private final Map<String,Page> pages = new HashMap<String,Page>();
+
+    /**
+     * For each project with synthetic issues, the issues updated by {@link #updateIssue(String, int)}.
+     */
+    private final Map<String,Map<Integer,String>> issueUpdates = new HashMap<String,Map<Integer,String>>();
+    /**
+     * For each project with synthetic issues, the IDs removed by {@link #moveIssues(String, int, int)}.
+     */
+    private final Map<String,Set<Integer>> movedIssues = new HashMap<String,Set<Integer>>();
+
+    private volatile long latency, jitter;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private final Random random = new Random();
+
+    private ServerSocket socket;
+    private ExecutorService workers;
+    /**
+     * Connections being served, so that {@link #stop()} can cut them.
+     */
+    private final Set<Socket> connections = new HashSet<Socket>();
+
+    /**
+     * @param store
+     *      Recorded responses to replay. Can be null if only synthetic pages are served.
+     */
+    public FixtureServer(FixtureStore store) {
+        this.store = store;
+    }
+
+    public FixtureServer() {
+        this(null);
+    }
+
+    /**
+     * Generates a synthetic page.
+     */
+    private interface Page {
+        /**
+         * @param url
+         *      the full request URL in the "https://" form.
+         * @return
+         *      null to fail the request, as a server that gave up on it would.
+         */
+        String render(String url);
+        String getContentType();
+    }
+
+    private void addPage(String url, Page page) {
+        synchronized(pages) {
+            pages.put(url,page);
+        }
+    }
+
+    private static abstract class HtmlPage implements Page {
+        public String getContentType() {
+            return "text/html;charset=UTF-8";
+        }
+    }
+
+    /**
+     * Serves the member list of the given project with the given number of members.
+     */
+    public void addMemberList(final String project, final int members) {
+        addPage(projectURL(project)+"/servlets/ProjectMemberList",new HtmlPage() {
+            public String render(String url) {
+                return SyntheticPages.memberList(project,members);
+            }
+        });
+    }
+
+    /**
+     * Serves the root folder of the "documents &amp; files" section of the given project,
+     * with the given number of files in it.
+     */
+    public void addDocumentList(final String project, final int files) {
+        addPage(projectURL(project)+"/servlets/ProjectDocumentList",new HtmlPage() {
+            public String render(String url) {
+                return SyntheticPages.documentList(project,files);
+            }
+        });
+    }
+
+    /**
+     * Serves the issue tracker XML of the given project, with issues numbered from 1 to the given number,
+     * both from xml.cgi and xmlupdate.cgi.
+     */
+    public void addIssues(String project, int issues) {
+        addIssues(project,issues,Integer.MAX_VALUE);
+    }
+
+    /**
+     * Serves the issue tracker XML just like {@link #addIssues(String, int)},
+     * except that xml.cgi fails when asked for more than the given number of issues at once.
+     */
+    public void addIssues(final String project, final int issues, final int maxPerRequest) {
+        final Map<Integer,String> updates = new ConcurrentHashMap<Integer,String>();
+        final Set<Integer> moved = Collections.synchronizedSet(new HashSet<Integer>());
+        synchronized(issueUpdates) {
+            issueUpdates.put(project,updates);
+            movedIssues.put(project,moved);
+        }
+        addPage(projectURL(project)+"/issues/xml.cgi",new XmlPage() {
+            public String render(String url) {
+                return SyntheticPages.issues(url,issues,maxPerRequest,updates,moved);
+            }
+        });
+        addPage(projectURL(project)+"/issues/xmlupdate.cgi",new XmlPage() {
+            public String render(String url) {
+                return SyntheticPages.issueUpdates(url,issues,updates,moved);
+            }
+        });
+    }
+
+    /**
+     * Updates one of the issues served by {@link #addIssues(String, int)}, as if someone edited it now.
+     * The summary of the issue gets " (updated)" appended, and its <tt>delta_ts</tt> becomes the current time.
+     */
+    public void updateIssue(String project, int id) {
+        Map<Integer,String> updates;
+        synchronized(issueUpdates) {
+            updates = issueUpdates.get(project);
+        }
+        if(updates==null)
+            throw new IllegalArgumentException("No issues for "+project);
+        // java.net servers are in PST
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        f.setTimeZone(TimeZone.getTimeZone("PST"));
+        updates.put(id,f.format(new Date()));
+    }
+
+    /**
+     * Removes the issues from the given ID to the given ID (inclusive) out of those served by
+     * {@link #addIssues(String, int)}, as if they were moved to another project,
+     * leaving a gap in the IDs.
+     */
+    public void moveIssues(String project, int from, int to) {
+        Set<Integer> moved;
+        synchronized(issueUpdates) {
+            moved = movedIssues.get(project);
+        }
+        if(moved==null)
+            throw new IllegalArgumentException("No issues for "+project);
+        for( int id=from; id<=to; id++ )
+            moved.add(id);
+    }
+
+    private static abstract class XmlPage implements Page {
+        public String getContentType() {
+            return "text/xml;charset=UTF-8";
+        }
+    }
+
+    /**
+     * Serves the result of {@link JavaNet#runAdHocQuery(String)}, with the given number of rows and columns,
+     * regardless of the query.
+     */
+    public void addAdHocQuery(final int rows, final int columns) {
+        addPage("https://www.dev.java.net/servlets/AdHocQuery",new HtmlPage() {
+            public String render(String url) {
+                return SyntheticPages.adHocQuery(rows,columns);
+            }
+        });
+    }
+
+    private static String projectURL(String project) {
+        return "https://"+project+".dev.java.net";
+    }
+
+    /**
+     * Adds artificial delay to every response.
+     *
+     * @param latency
+     *      Minimum delay in milliseconds.
+     * @param jitter
+     *      Up to this many milliseconds of random delay is added on top of the latency.
+     */
+    public void setLatency(long latency, long jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Starts listening on a random port of the loopback interface.
+     */
+    public synchronized void start() throws IOException {
+        if(socket!=null)
+            throw new IllegalStateException("already started");
+        socket = new ServerSocket(0,50,InetAddress.getByName("127.0.0.1"));
+        workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            private int n;
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r,"FixtureServer worker #"+(++n));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        final ServerSocket ss = socket;
+        workers.execute(new Runnable() {
+            public void run() {
+                try {
+                    while(true) {
+                        final Socket s = ss.accept();
+                        try {
+                            workers.execute(new Runnable() {
+                                public void run() {
+                                    serve(ss,s);
+                                }
+                            });
+                        } catch (RejectedExecutionException e) {
+                            // stopped while accepting. don't leave the client waiting for the response
+                            s.close();
+                            return;
+                        }
+                    }
+                } catch (IOException e) {
+                    if(!ss.isClosed())
+                        LOGGER.log(Level.WARNING,"FixtureServer stopped accepting connections",e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Number of requests served so far.
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Number of requests answered with 304 Not Modified so far.
+     */
+    public int getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    public synchronized int getPort() {
+        if(socket==null)
+            throw new IllegalStateException("not started");
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Stops listening, and closes the connections that are kept alive, so that the clients fail
+     * just like when the server goes down.
+     */
+    public synchronized void stop() throws IOException {
+        if(socket!=null) {
+            socket.close();
+            workers.shutdownNow();
+            socket = null;
+            synchronized(connections) {
+                for (Socket s : connections)
+                    s.close();
+                connections.clear();
+            }
+        }
+    }
+
+    /**
+     * Creates a new anonymous session that talks to this server.
+     */
+    public JavaNet connect() {
+        JavaNet jn = JavaNet.connectAnonymously();
+        jn.useFixtureServer("127.0.0.1",getPort());
+        return jn;
+    }
+
+    /**
+     * Handles requests on one connection, until the client closes it.
+     */
+    private void serve(ServerSocket ss, Socket s) {
+        try {
+            synchronized(connections) {
+                if(ss.isClosed()) {
+                    // stopped before we got here
+                    s.close();
+                    return;
+                }
+                connections.add(s);
+            }
+
+            s.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = new BufferedOutputStream(s.getOutputStream());
+            try {
+                while(true) {
+                    String requestLine = readLine(in);
+                    if(requestLine==null)
+                        return;
+                    if(requestLine.length()==0)
+                        continue;
+                    String[] tokens = requestLine.split(" ");
+                    if(tokens.length!=3) {
+                        respond(out,400,"text/plain",new HashMap<String,String>(),bytes("Bad request line: "+requestLine),false);
+                        return;
+                    }
+                    String method = tokens[0];
+                    String target = tokens[1];
+                    boolean keepAlive = tokens[2].equals("HTTP/1.1");
+
+                    // headers
+                    String host = null;
+                    String ifNoneMatch = null;
+                    int contentLength = 0;
+                    String line;
+                    while((line=readLine(in))!=null && line.length()>0) {
+                        int idx = line.indexOf(':');
+                        if(idx<0)   continue;
+                        String name = line.substring(0,idx).trim();
+                        String value = line.substring(idx+1).trim();
+                        if(name.equalsIgnoreCase("Host"))
+                            host = value;
+                        if(name.equalsIgnoreCase("If-None-Match"))
+                            ifNoneMatch = value;
+                        if(name.equalsIgnoreCase("Content-Length"))
+                            contentLength = Integer.parseInt(value);
+                        if(name.equalsIgnoreCase("Connection") || name.equalsIgnoreCase("Proxy-Connection"))
+                            keepAlive &= !value.equalsIgnoreCase("close");
+                    }
+                    for( int i=0; i<contentLength; i++ )
+                        if(in.read()<0)     return;
+
+                    // proxy requests have absolute URLs
+                    String url = target.startsWith("http://") ? target : "http://"+host+target;
+                    url = "https://"+url.substring("http://".length());
+
+                    delay();
+                    requests.incrementAndGet();
+                    handle(method,url,ifNoneMatch,out,keepAlive);
+                    out.flush();
+                    if(!keepAlive)
+                        return;
+                }
+            } finally {
+                s.close();
+            }
+        } catch (SocketException e) {
+            // the client went away
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE,"Failed to serve a request",e);
+        } finally {
+            synchronized(connections) {
+                connections.remove(s);
+            }
+        }
+    }
+
+    private void handle(String method, String url, String ifNoneMatch, OutputStream out, boolean keepAlive) throws IOException {
+        int q = url.indexOf('?');
+        Page page;
+        synchronized(pages) {
+            page = pages.get(q<0 ? url : url.substring(0,q));
+        }
+        if(page!=null && method.equals("GET")) {
+            String body = page.render(url);
+            if(body==null) {
+                respond(out,503,"text/plain",new HashMap<String,String>(),bytes("Timed out"),keepAlive);
+                return;
+            }
+            byte[] data = rewrite(bytes(body));
+            Map<String,String> headers = new HashMap<String,String>();
+            String etag = '"'+Integer.toHexString(Arrays.hashCode(data))+'"';
+            headers.put("ETag",etag);
+            if(etag.equals(ifNoneMatch)) {
+                notModified.incrementAndGet();
+                respond(out,304,null,headers,new byte[0],keepAlive);
+            } else {
+                respond(out,200,page.getContentType(),headers,data,keepAlive);
+            }
+            return;
+        }
+
+        FixtureStore.Exchange e = store!=null ? store.find(method,url) : null;
+        if(e==null) {
+            respond(out,404,"text/plain",new HashMap<String,String>(),bytes("No fixture for "+method+' '+url),keepAlive);
+            return;
+        }
+
+        Map<String,String> headers = new HashMap<String,String>();
+        for (Map.Entry<String,String> h : e.getHeaders().entrySet())
+            headers.put(h.getKey(),new String(rewrite(bytes(h.getValue())),"UTF-8"));
+        String ct = e.getContentType();
+        byte[] body = e.getBody();
+        if(ct!=null && (ct.startsWith("text/") || ct.indexOf("xml")>=0))
+            body = rewrite(body);
+        respond(out,e.getStatus(),ct,headers,body,keepAlive);
+    }
+
+    private void respond(OutputStream out, int status, String contentType, Map<String,String> headers, byte[] body, boolean keepAlive) throws IOException {
+        StringBuilder buf = new StringBuilder();
+        buf.append("HTTP/1.1 ").append(status).append(status<400 ? " OK" : " Error").append("\r\n");
+        if(contentType!=null)
+            buf.append("Content-Type: ").append(contentType).append("\r\n");
+        for (Map.Entry<String,String> h : headers.entrySet())
+            buf.append(h.getKey()).append(": ").append(h.getValue()).append("\r\n");
+        buf.append("Content-Length: ").append(body.length).append("\r\n");
+        if(!keepAlive)
+            buf.append("Connection: close\r\n");
+        buf.append("\r\n");
+        out.write(buf.toString().getBytes("ISO-8859-1"));
+        out.write(body);
+    }
+
+    private void delay() {
+        long d = latency;
+        if(jitter>0) {
+            synchronized(random) {
+                d += (long)(random.nextDouble()*jitter);
+            }
+        }
+        if(d>0) {
+            try {
+                Thread.sleep(d);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Changes https links to java.net into http, so that the client keeps coming back to us.
+     * ISO-8859-1 maps bytes to chars one to one, so this works regardless of the encoding.
+     */
+    private static byte[] rewrite(byte[] body) throws IOException {
+        String s = new String(body,"ISO-8859-1");
+        return HTTPS.matcher(s).replaceAll("http://$1").getBytes("ISO-8859-1");
+    }
+
+    private static final Pattern HTTPS = Pattern.compile("https://([A-Za-z0-9.-]*java\\.net)");
+
+    private static byte[] bytes(String s) throws IOException {
+        return s.getBytes("UTF-8");
+    }
+
+    /**
+     * Reads a line terminated by CRLF (or LF.)
+     *
+     * @return
+     *      null at the end of the stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        int ch;
+        while((ch=in.read())>=0) {
+            if(ch=='\n')
+                break;
+            if(ch!='\r')
+                buf.write(ch);
+        }
+        if(ch<0 && buf.size()==0)
+            return null;
+        return buf.toString("ISO-8859-1");
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(FixtureServer.class.getName());
+}
@@ -0,0 +1,234 @@
+package org.kohsuke.jnt.fixture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Directory of recorded HTTP exchanges.
+ *
+ * <p>
+ * While {@link org.kohsuke.jnt.JavaNet#setRecorder(FixtureStore) recording}, every response
+ * that java.net sends back is saved here, keyed by the request method and the URL.
+ * {@link FixtureServer} later replays them, so that the scraping code can be
+ * exercised without talking to the live site.
+ *
+ * <p>
+ * Each exchange is stored as two files, <tt>KEY.meta</tt> (a property file with the status code
+ * and the headers) and <tt>KEY.body</tt>. When the same request is made more than once,
+ * the last response wins. The parameters of POST requests are not part of the key.
+ */
+public final class FixtureStore {
+    private final File dir;
+
+    public FixtureStore(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Recorded response.
+     */
+    public static final class Exchange {
+        private final int status;
+        private final String contentType;
+        private final Map<String,String> headers;
+        private final byte[] body;
+
+        public Exchange(int status, String contentType, Map<String,String> headers, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.headers = Collections.unmodifiableMap(new TreeMap<String,String>(headers));
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return
+         *      null if the response didn't have the content type.
+         */
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Other headers that matter for replaying, such as <tt>Location</tt> and <tt>Set-Cookie</tt>.
+         */
+        public Map<String,String> getHeaders() {
+            return headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Records a response.
+     */
+    public void record(String method, String url, Exchange e) throws IOException {
+        String key = key(method,url);
+        OutputStream out = new FileOutputStream(new File(dir,key+BODY));
+        try {
+            out.write(e.body);
+        } finally {
+            out.close();
+        }
+        writeMeta(key,method,url,e);
+    }
+
+    /**
+     * Records a response while its body is being read.
+     *
+     * @return
+     *      the stream that reads the same body. The response is recorded when
+     *      this stream is closed after reading it until the end.
+     */
+    public InputStream record(final String method, final String url, final int status, final String contentType, final Map<String,String> headers, InputStream body) {
+        final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        return new FilterInputStream(body) {
+            private boolean eof, closed;
+
+            public int read() throws IOException {
+                int ch = super.read();
+                if(ch<0)    eof = true;
+                else        buf.write(ch);
+                return ch;
+            }
+
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b,off,len);
+                if(n<0)     eof = true;
+                else        buf.write(b,off,n);
+                return n;
+            }
+
+            public long skip(long n) throws IOException {
+                // make sure skipped bytes are recorded, too
+                byte[] b = new byte[(int)Math.min(n,8192)];
+                int r = read(b,0,b.length);
+                return Math.max(r,0);
+            }
+
+            public void close() throws IOException {
+                if(closed)  return;
+                closed = true;
+                super.close();
+                if(eof)
+                    record(method,url,new Exchange(status,contentType,headers,buf.toByteArray()));
+            }
+        };
+    }
+
+    /**
+     * Finds the recorded response.
+     *
+     * @return
+     *      null if no such request was recorded.
+     */
+    public Exchange find(String method, String url) throws IOException {
+        String key = key(method,url);
+        File meta = new File(dir,key+META);
+        if(!meta.exists())
+            return null;
+
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(meta);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+
+        Map<String,String> headers = new TreeMap<String,String>();
+        for (Enumeration e = props.propertyNames(); e.hasMoreElements();) {
+            String name = (String)e.nextElement();
+            if(name.startsWith(HEADER))
+                headers.put(name.substring(HEADER.length()),props.getProperty(name));
+        }
+
+        return new Exchange(Integer.parseInt(props.getProperty("status")),
+            props.getProperty("contentType"),headers,readFully(new File(dir,key+BODY)));
+    }
+
+    private void writeMeta(String key, String method, String url, Exchange e) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("method",method);
+        props.setProperty("url",url);
+        props.setProperty("status",String.valueOf(e.status));
+        if(e.contentType!=null)
+            props.setProperty("contentType",e.contentType);
+        for (Map.Entry<String,String> h : e.headers.entrySet())
+            props.setProperty(HEADER+h.getKey(),h.getValue());
+
+        OutputStream out = new FileOutputStream(new File(dir,key+META));
+        try {
+            props.store(out,null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] readFully(File f) throws IOException {
+        InputStream in = new FileInputStream(f);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int)f.length());
+            byte[] buf = new byte[8192];
+            int len;
+            while((len=in.read(buf))>=0)
+                out.write(buf,0,len);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Turns the request into the file name.
+     *
+     * <p>
+     * Requests replayed through {@link FixtureServer} are made in plain HTTP,
+     * so the scheme is normalized to match what was recorded from the live site.
+     */
+    private static String key(String method, String url) {
+        if(url.startsWith("http://"))
+            url = "https://"+url.substring("http://".length());
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            byte[] digest = md5.digest((method+' '+url).getBytes("UTF-8"));
+            StringBuilder buf = new StringBuilder();
+            for (byte b : digest) {
+                buf.append(Character.forDigit((b>>4)&0xF,16));
+                buf.append(Character.forDigit(b&0xF,16));
+            }
+            return buf.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e); // MD5 is always there
+        } catch (IOException e) {
+            throw new Error(e); // UTF-8 is always there
+        }
+    }
+
+    private static final String BODY = ".body";
+    private static final String META = ".meta";
+    private static final String HEADER = "header.";
+}
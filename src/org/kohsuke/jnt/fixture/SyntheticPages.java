@@ -0,0 +1,180 @@
+package org.kohsuke.jnt.fixture;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.StringTokenizer;
+
+/**
+ * Generates java.net pages of arbitrary size, in the same shape as the real ones
+ * (or at least as far as our scraping code is concerned.)
+ */
+final class SyntheticPages {
+    private SyntheticPages() {}
+
+    /**
+     * <tt>/servlets/ProjectMemberList</tt> with the given number of members.
+     */
+    static String memberList(String project, int members) {
+        StringBuilder buf = new StringBuilder(members*128+1024);
+        head(buf,project+": Project membership");
+        // the empty column of check boxes for selecting members
+        buf.append("<table class='axial'>\n<tr><th>&nbsp;</th><th>User</th><th>Full name</th><th>Roles</th></tr>\n");
+        for( int i=0; i<members; i++ ) {
+            buf.append("<tr><td><input type='checkbox' name='massSelect' value='user").append(i).append("'></td>")
+               .append("<td><a href='/servlets/UserView?username=user").append(i).append("'>user").append(i)
+               .append("</a></td><td>User ").append(i).append("</td><td>")
+               .append(i==0 ? "Project Owner" : i%10==0 ? "Developer, Content Developer" : "Observer")
+               .append("</td></tr>\n");
+        }
+        buf.append("</table>\n");
+        tail(buf);
+        return buf.toString();
+    }
+
+    /**
+     * <tt>/servlets/ProjectDocumentList</tt> of the root folder, with the given number of files.
+     */
+    static String documentList(String project, int files) {
+        StringBuilder buf = new StringBuilder(files*512+1024);
+        head(buf,project+": Documents &amp; files");
+        buf.append("<div id='projectdocumentlist'><table><tr>\n")
+           .append("<td class='treeview'><ul><li class='selection'><a href='/servlets/ProjectDocumentList?folderID=0&amp;expandFolder=0'>")
+           .append(project).append("</a></li></ul></td>\n")
+           .append("<td class='filebrowse'><div><table>\n")
+           .append("<tr><th>Name</th><th>Status</th><th>Modified by</th><th>Size</th><th></th><th>Description</th><th>Info</th></tr>\n");
+        for( int i=1; i<=files; i++ ) {
+            buf.append("<tr><td><div><a href='/files/documents/0/").append(i).append("/file").append(i).append(".zip'>file")
+               .append(i).append(".zip</a></div></td><td>Draft</td>")
+               .append("<td><a href='/servlets/UserView?username=user0'>user0</a> on Monday, January 05, 2009 at 10:00:00 AM</td>")
+               .append("<td>1 KB</td><td></td><td>Synthetic file #").append(i).append("</td>")
+               .append("<td><a href='/servlets/ProjectDocumentView?documentID=").append(i).append("&amp;showInfo=true'>Info</a></td></tr>\n");
+        }
+        buf.append("</table></div></td></tr></table></div>\n");
+        tail(buf);
+        return buf.toString();
+    }
+
+    /**
+     * <tt>/servlets/AdHocQuery</tt> result of the given size.
+     */
+    static String adHocQuery(int rows, int columns) {
+        StringBuilder buf = new StringBuilder(rows*columns*32+1024);
+        head(buf,"Ad-hoc query");
+        buf.append("<div id='adhocqueryresults'><table>\n<tr>");
+        for( int c=0; c<columns; c++ )
+            buf.append("<th>column").append(c).append("</th>");
+        buf.append("</tr>\n");
+        for( int r=0; r<rows; r++ ) {
+            buf.append("<tr>");
+            for( int c=0; c<columns; c++ )
+                buf.append("<td>value").append(r).append('.').append(c).append("</td>");
+            buf.append("</tr>\n");
+        }
+        buf.append("</table></div>\n");
+        tail(buf);
+        return buf.toString();
+    }
+
+    /**
+     * <tt>/issues/xml.cgi</tt> for the IDs listed in the given URL, out of the issues numbered 1 to n.
+     *
+     * @param updates
+     *      the issues that were updated, to the time stamps of the updates in the xmlupdate.cgi parameter format.
+     * @param moved
+     *      the issues that are missing from 1 to n.
+     * @return
+     *      null if more than the given number of IDs are asked for.
+     */
+    static String issues(String url, int issues, int maxPerRequest, Map<Integer,String> updates, Set<Integer> moved) {
+        String ids = param(url,"id");
+        StringBuilder buf = new StringBuilder();
+        buf.append("<?xml version='1.0' encoding='UTF-8'?>\n<issuezilla>\n");
+        if(ids!=null) {
+            StringTokenizer tokens = new StringTokenizer(ids,",");
+            if(tokens.countTokens()>maxPerRequest)
+                return null;
+            while(tokens.hasMoreTokens()) {
+                int id = Integer.parseInt(tokens.nextToken().trim());
+                if(1<=id && id<=issues && !moved.contains(id))
+                    issue(buf,id,updates.get(id));
+            }
+        }
+        buf.append("</issuezilla>\n");
+        return buf.toString();
+    }
+
+    /**
+     * <tt>/issues/xmlupdate.cgi</tt> for the time span given in the URL, out of the issues numbered 1 to n.
+     */
+    static String issueUpdates(String url, int issues, Map<Integer,String> updates, Set<Integer> moved) {
+        String ts = param(url,"ts");
+        String tsEnd = param(url,"ts_end");
+        StringBuilder buf = new StringBuilder();
+        buf.append("<?xml version='1.0' encoding='UTF-8'?>\n<issuezilla>\n");
+        for( int id=1; id<=issues; id++ ) {
+            if(moved.contains(id))
+                continue;
+            String update = updates.get(id);
+            String d = update!=null ? update : DELTA_TS;
+            // the format sorts as a string
+            if((ts==null || decode(ts).compareTo(d)<=0) && (tsEnd==null || d.compareTo(decode(tsEnd))<0))
+                issue(buf,id,update);
+        }
+        buf.append("</issuezilla>\n");
+        return buf.toString();
+    }
+
+    /**
+     * Time stamp of all the synthetic issues that aren't updated, in the xmlupdate.cgi parameter format.
+     */
+    private static final String DELTA_TS = "2009-01-05 10:00:00";
+
+    private static String decode(String s) {
+        return s.replace("%20"," ").replace('+',' ');
+    }
+
+    /**
+     * @param update
+     *      the time stamp of the update to the issue, or null if it's not updated.
+     */
+    private static void issue(StringBuilder buf, int id, String update) {
+        buf.append("<issue status_code='200' status_message='OK'>")
+           .append("<issue_id>").append(id).append("</issue_id>")
+           .append("<issue_status>").append(id%3==0 ? "RESOLVED" : "NEW").append("</issue_status>")
+           .append("<priority>P").append(id%5+1).append("</priority>")
+           .append("<resolution>").append(id%3==0 ? "FIXED" : "").append("</resolution>")
+           .append("<component>synthetic</component><version>current</version>")
+           .append("<rep_platform>All</rep_platform><op_sys>All</op_sys>")
+           .append("<assigned_to>user").append(id%10).append("</assigned_to>")
+           .append("<reporter>user").append(id%7).append("</reporter>")
+           .append("<subcomponent>www</subcomponent><issue_type>DEFECT</issue_type>")
+           .append("<votes>0</votes><status_whiteboard></status_whiteboard>")
+           .append("<short_desc>Synthetic issue #").append(id).append(update!=null ? " (updated)" : "").append("</short_desc>")
+           .append("<creation_ts>2009-01-05 10:00:00</creation_ts>")
+           .append("<delta_ts>").append((update!=null ? update : DELTA_TS).replaceAll("[^0-9]","")).append("</delta_ts>")
+           .append("<long_desc><who>user").append(id%7).append("</who><issue_when>2009-01-05 10:00:00</issue_when>")
+           .append("<thetext>Description of the synthetic issue #").append(id).append("</thetext></long_desc>")
+           .append("</issue>\n");
+    }
+
+    private static void head(StringBuilder buf, String title) {
+        buf.append("<html><head><title>").append(title).append("</title></head><body>\n");
+    }
+
+    private static void tail(StringBuilder buf) {
+        buf.append("</body></html>\n");
+    }
+
+    /**
+     * Gets the value of the query parameter.
+     */
+    private static String param(String url, String name) {
+        int q = url.indexOf('?');
+        if(q<0)     return null;
+        for( String p : url.substring(q+1).split("&") ) {
+            if(p.startsWith(name+'='))
+                return p.substring(name.length()+1);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,85 @@
+package org.kohsuke.jnt;
+
+import junit.framework.TestCase;
+
+import static org.kohsuke.jnt.BatchSizer.MAX_SIZE;
+import static org.kohsuke.jnt.BatchSizer.MIN_SIZE;
+
+public class BatchSizerTest extends TestCase {
+    private static final long MS = 1000*1000L;
+
+    public void testFailureHalves() {
+        BatchSizer s = new BatchSizer(100);
+        s.failed(100);
+        assertEquals(50,s.getSize());
+        s.failed(50);
+        assertEquals(25,s.getSize());
+
+        // concurrent batches of the old size that fail later don't halve it again
+        s.failed(100);
+        assertEquals(25,s.getSize());
+    }
+
+    public void testFailureStopsAtMinimum() {
+        BatchSizer s = new BatchSizer(2);
+        s.failed(2);
+        assertEquals(MIN_SIZE,s.getSize());
+        s.failed(1);
+        assertEquals(MIN_SIZE,s.getSize());
+    }
+
+    public void testGrowsUpToMaximum() {
+        BatchSizer s = new BatchSizer(100);
+        int last = s.getSize();
+        for( int i=0; i<20; i++ ) {
+            // tiny and fast issues
+            s.succeeded(s.getSize(),s.getSize(),s.getSize()*100L,s.getSize()*MS);
+            assertTrue(s.getSize()<=last*2);
+            last = s.getSize();
+        }
+        assertEquals(MAX_SIZE,s.getSize());
+    }
+
+    public void testShrinksDownToMinimum() {
+        BatchSizer s = new BatchSizer(100);
+        for( int i=0; i<20; i++ )
+            // each issue is bigger than the whole target
+            s.succeeded(s.getSize(),s.getSize(),s.getSize()*(long)BatchSizer.TARGET_BYTES*2,s.getSize()*MS);
+        assertEquals(MIN_SIZE,s.getSize());
+    }
+
+    public void testTargetsResponseSize() {
+        BatchSizer s = new BatchSizer(100);
+        // 20KB per issue, so 2MB is about 100 issues
+        for( int i=0; i<10; i++ )
+            s.succeeded(s.getSize(),s.getSize(),s.getSize()*20*1024L,s.getSize()*MS);
+        assertTrue(String.valueOf(s.getSize()),Math.abs(s.getSize()-102)<=2);
+    }
+
+    public void testEmptyWindowIsIgnored() {
+        BatchSizer s = new BatchSizer(100);
+        s.succeeded(100,0,100,MS);
+        assertEquals(100,s.getSize());
+    }
+
+    public void testCreepsTowardsFailedSize() {
+        BatchSizer s = new BatchSizer(400);
+        s.failed(400);
+        assertEquals(200,s.getSize());
+
+        // even though the issues are small, the size only creeps up towards the size that failed
+        int steps = 0;
+        while(s.getSize()<400) {
+            int last = s.getSize();
+            s.succeeded(last,last,last*100L,last*MS);
+            assertTrue(s.getSize()>last && s.getSize()<=last+last/8);
+            steps++;
+        }
+        assertTrue(steps>2);
+
+        // once a batch that large succeeds, the size grows freely again
+        int last = s.getSize();
+        s.succeeded(last,last,last*100L,last*MS);
+        assertEquals(last*2,s.getSize());
+    }
+}
@@ -0,0 +1,132 @@
+package org.kohsuke.jnt;
+
+import junit.framework.TestCase;
+
+public class CachedTest extends TestCase {
+    private JavaNet jn;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        jn = JavaNet.connectAnonymously();
+    }
+
+    /**
+     * Counts how many times it's loaded, and depends on the given pages.
+     */
+    private class Counter extends Cached<Integer> {
+        private final String[] urls;
+        private int loads;
+
+        Counter(String... urls) {
+            super(jn);
+            this.urls = urls;
+        }
+
+        protected Integer load() {
+            for (String url : urls)
+                dependsOn(url);
+            return ++loads;
+        }
+    }
+
+    public void testValueIsKept() throws Exception {
+        Counter c = new Counter("https://foo.dev.java.net/servlets/ProjectMemberList");
+        assertEquals(1,(int)c.get());
+        assertEquals(1,(int)c.get());
+        assertEquals(1,(int)c.peek());
+    }
+
+    public void testInvalidateByPage() throws Exception {
+        Counter c = new Counter("https://foo.dev.java.net/servlets/ProjectMemberList");
+        c.get();
+        jn.invalidateCache("https://foo.dev.java.net/servlets/ProjectMemberList");
+        assertNull(c.peek());
+        assertEquals(2,(int)c.get());
+    }
+
+    public void testPrefixCoversQueryString() throws Exception {
+        Counter q = new Counter("https://foo.dev.java.net/servlets/ProjectDocumentList?folderID=3");
+        Counter a = new Counter("https://foo.dev.java.net/servlets/ProjectDocumentList?expandFolder=3&folderID=0");
+        q.get();
+        a.get();
+        jn.invalidateCache("https://foo.dev.java.net/servlets/ProjectDocumentList");
+        assertNull(q.peek());
+        assertNull(a.peek());
+    }
+
+    public void testPrefixStopsAtPageBoundary() throws Exception {
+        Counter list = new Counter("https://foo.dev.java.net/servlets/ProjectDocumentList");
+        Counter other = new Counter("https://foo.dev.java.net/servlets/ProjectDocumentListView");
+        Counter project = new Counter("https://foobar.dev.java.net/servlets/ProjectDocumentList");
+        list.get();
+        other.get();
+        project.get();
+
+        jn.invalidateCache("https://foo.dev.java.net/servlets/ProjectDocumentList");
+        assertNull(list.peek());
+        assertNotNull(other.peek());
+
+        // neither does a prefix of the host name, or the page with a different query string
+        jn.invalidateCache("https://foo");
+        jn.invalidateCache("https://foo.dev.java.net/servlets/ProjectDocumentListView?x=1");
+        assertNotNull(other.peek());
+        assertNotNull(project.peek());
+    }
+
+    public void testSchemeAndFragmentAreIgnored() throws Exception {
+        Counter c = new Counter("http://foo.dev.java.net/servlets/ProjectMemberList#top");
+        c.get();
+        jn.invalidateCache("https://foo.dev.java.net/servlets/ProjectMemberList");
+        assertNull(c.peek());
+    }
+
+    public void testDependenciesPropagate() throws Exception {
+        final Counter inner = new Counter("https://foo.dev.java.net/servlets/ProjectMemberList");
+        Cached<Integer> outer = new Cached<Integer>(jn) {
+            protected Integer load() throws ProcessingException {
+                return inner.get()*10;
+            }
+        };
+        assertEquals(10,(int)outer.get());
+        jn.invalidateCache("https://foo.dev.java.net/servlets/ProjectMemberList");
+        assertNull(outer.peek());
+        assertEquals(20,(int)outer.get());
+    }
+
+    public void testTTL() throws Exception {
+        jn.setCacheTTL(100);
+        Counter c = new Counter("https://foo.dev.java.net/servlets/ProjectMemberList");
+        assertEquals(1,(int)c.get());
+        assertEquals(1,(int)c.get());
+        Thread.sleep(200);
+        assertNull(c.peek());
+        assertEquals(2,(int)c.get());
+
+        // 0 means forever
+        jn.setCacheTTL(0);
+        Thread.sleep(200);
+        assertEquals(2,(int)c.get());
+    }
+
+    public void testCollectedValuesAreForgotten() throws Exception {
+        for( int i=0; i<1000; i++ )
+            new Counter("https://foo.dev.java.net/issues/show_bug.cgi?id="+i).get();
+        // nothing holds on to those values, so their pages are dropped as other values come and go
+        for( int i=0; i<100 && jn.caches.size()>100; i++ ) {
+            System.gc();
+            for( int j=0; j<100; j++ )
+                new Counter("https://bar.dev.java.net/issues/show_bug.cgi?id="+j).get();
+        }
+        assertTrue(String.valueOf(jn.caches.size()),jn.caches.size()<=100);
+    }
+
+    public void testInvalidateAll() throws Exception {
+        Counter a = new Counter("https://foo.dev.java.net/servlets/ProjectMemberList");
+        Counter b = new Counter("https://bar.dev.java.net/servlets/ProjectDocumentList");
+        a.get();
+        b.get();
+        jn.invalidateCache();
+        assertNull(a.peek());
+        assertNull(b.peek());
+    }
+}
@@ -0,0 +1,66 @@
+package org.kohsuke.jnt;
+
+import junit.framework.TestCase;
+
+public class InternerTest extends TestCase {
+    public void testNullKey() {
+        Interner<Object> i = new Interner<Object>();
+        Object o = new Object();
+        assertNull(i.get(null));
+        assertSame(o,i.intern(null,o));
+        assertSame(o,i.intern(null,new Object()));
+        assertSame(o,i.get(null));
+        assertNull(i.get(""));
+    }
+
+    public void testHoldsEverythingByDefault() {
+        Interner<Object> i = new Interner<Object>();
+        for( int n=0; n<100; n++ )
+            i.intern("o"+n,new Object());
+        gc();
+        for( int n=0; n<100; n++ )
+            assertNotNull(i.get("o"+n));
+    }
+
+    public void testBounded() {
+        Interner<Object> i = new Interner<Object>();
+        i.setLimit(10);
+        for( int n=0; n<100; n++ )
+            i.intern("o"+n,new Object());
+        gc();
+        // the most recent ones are held strongly
+        for( int n=90; n<100; n++ )
+            assertNotNull(i.get("o"+n));
+        assertNull(i.get("o0"));
+    }
+
+    public void testWeak() {
+        Interner<Object> i = new Interner<Object>();
+        i.setLimit(0);
+        Object kept = new Object();
+        i.intern("kept",kept);
+        i.intern("dropped",new Object());
+        gc();
+        assertNull(i.get("dropped"));
+        // an object still in use is never replaced by another instance
+        assertSame(kept,i.intern("kept",new Object()));
+        assertSame(kept,i.get("kept"));
+    }
+
+    public void testLoweringTheLimit() {
+        Interner<Object> i = new Interner<Object>();
+        for( int n=0; n<10; n++ )
+            i.intern("o"+n,new Object());
+        i.setLimit(0);
+        gc();
+        assertNull(i.get("o0"));
+    }
+
+    private static void gc() {
+        // weak references are cleared by a full collection, but System.gc() is only a hint
+        for( int n=0; n<5; n++ ) {
+            System.gc();
+            System.runFinalization();
+        }
+    }
+}
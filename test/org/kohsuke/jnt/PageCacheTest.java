@@ -0,0 +1,125 @@
+package org.kohsuke.jnt;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class PageCacheTest extends TestCase {
+    private File dir;
+
+    public void setUp() throws IOException {
+        dir = File.createTempFile("pagecache","");
+        dir.delete();
+    }
+
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if(files!=null)
+            for (File f : files)
+                f.delete();
+        dir.delete();
+    }
+
+    public void testRoundTrip() throws IOException {
+        PageCache c = new PageCache(dir,1000);
+        assertNull(c.get(null,"a"));
+        put(c,"a","\"1\"","hello");
+        PageCache.Entry e = c.get(null,"a");
+        assertEquals("\"1\"",e.etag);
+        assertEquals("text/html",e.contentType);
+        assertEquals("hello",read(e));
+        // entries are per user
+        assertNull(c.get("kohsuke","a"));
+    }
+
+    public void testIncompleteBodyIsNotCached() throws IOException {
+        PageCache c = new PageCache(dir,1000);
+        InputStream in = c.store(null,"a","\"1\"",null,"text/html",new ByteArrayInputStream(new byte[10]));
+        in.read();
+        in.close();
+        assertNull(c.get(null,"a"));
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws IOException {
+        PageCache c = new PageCache(dir,100);
+        put(c,"a","\"1\"",body('a',40));
+        put(c,"b","\"1\"",body('b',40));
+        read(c.get(null,"a"));
+        put(c,"c","\"1\"",body('c',40));
+
+        assertNull(c.get(null,"b"));
+        assertEquals(body('a',40),read(c.get(null,"a")));
+        assertEquals(body('c',40),read(c.get(null,"c")));
+    }
+
+    public void testIndexIsRebuiltOnRestart() throws IOException {
+        PageCache c = new PageCache(dir,1000);
+        put(c,"a","\"1\"",body('a',40));
+        put(c,"b","\"1\"",body('b',40));
+        put(c,"c","\"1\"",body('c',40));
+        // make "b" the most recently used one
+        for (File f : dir.listFiles())
+            f.setLastModified(System.currentTimeMillis()-60*1000);
+        read(c.get(null,"b"));
+
+        c = new PageCache(dir,1000);
+        assertEquals(body('a',40),read(c.get(null,"a")));
+        assertEquals(body('c',40),read(c.get(null,"c")));
+        read(c.get(null,"b"));
+
+        // a smaller budget evicts the least recently used ones first
+        for (File f : dir.listFiles())
+            f.setLastModified(System.currentTimeMillis()-60*1000);
+        read(c.get(null,"b"));
+        c = new PageCache(dir,50);
+        assertEquals(body('b',40),read(c.get(null,"b")));
+        assertNull(c.get(null,"a"));
+        assertNull(c.get(null,"c"));
+    }
+
+    /**
+     * A page that was looked up can still be read after another thread replaces it.
+     */
+    public void testEntrySurvivesReplacement() throws IOException {
+        PageCache c = new PageCache(dir,100);
+        put(c,"a","\"1\"","old");
+        PageCache.Entry e = c.get(null,"a");
+        put(c,"a","\"2\"","new");
+        put(c,"b","\"1\"",body('b',99));   // evicts the new "a"
+        assertEquals("old",read(e));
+    }
+
+    private static void put(PageCache c, String url, String etag, String body) throws IOException {
+        InputStream in = c.store(null,url,etag,null,"text/html",new ByteArrayInputStream(body.getBytes("UTF-8")));
+        read(in);
+    }
+
+    private static String read(PageCache.Entry e) throws IOException {
+        assertNotNull(e);
+        return read(e.body);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] b = new byte[64];
+            int n;
+            while((n=in.read(b))>=0)
+                buf.write(b,0,n);
+            return buf.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String body(char ch, int len) {
+        StringBuilder buf = new StringBuilder();
+        for( int i=0; i<len; i++ )
+            buf.append(ch);
+        return buf.toString();
+    }
+}
@@ -0,0 +1,293 @@
+package org.kohsuke.jnt;
+
+import junit.framework.TestCase;
+import org.kohsuke.jnt.fixture.FixtureServer;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.kohsuke.jnt.RequestPriority.BULK;
+import static org.kohsuke.jnt.RequestPriority.INTERACTIVE;
+
+public class RequestGovernorTest extends TestCase {
+    private static final String URL = "http://governor.test/servlets/ProjectMemberList";
+
+    /**
+     * Lanes of the requests in the order they were admitted.
+     */
+    private final List<RequestPriority> admitted = new ArrayList<RequestPriority>();
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private volatile boolean stop;
+
+    /**
+     * Each test gets its own governor, since they are shared per site.
+     */
+    private RequestGovernor governor() {
+        return RequestGovernor.of(getName()+".test",true);
+    }
+
+    protected void tearDown() throws Exception {
+        stop = true;
+        for (Thread t : threads) {
+            t.interrupt();
+            t.join(5000);
+        }
+        super.tearDown();
+    }
+
+    public void testOptIn() {
+        assertNull(RequestGovernor.of("optin.test",false));
+        assertSame(RequestGovernor.of("a.optin.test",true),RequestGovernor.of("b.optin.test",true));
+    }
+
+    public void testBulkLeavesLastConnection() throws Exception {
+        final RequestGovernor g = governor();
+        // the initial limit is 4, of which bulk requests can take 3
+        long[] starts = new long[3];
+        for( int i=0; i<3; i++ )
+            starts[i] = g.begin(BULK);
+        load(g,BULK,1);
+        Thread.sleep(200);
+        assertEquals(0,count(BULK,0));
+
+        long t = g.begin(INTERACTIVE);
+        g.end(URL,t,false);
+        for (long s : starts)
+            g.end(URL,s,false);
+        waitFor(1);
+    }
+
+    public void testBulkDoesNotStarveInteractive() throws Exception {
+        RequestGovernor g = governor();
+        load(g,BULK,4);
+        waitFor(15);
+
+        load(g,INTERACTIVE,4);
+        long start = System.currentTimeMillis();
+        int first = waitForFirst(INTERACTIVE);
+        // only one or two more bulk requests go first, while the token bucket refills
+        assertTrue(System.currentTimeMillis()-start<1000);
+
+        waitFor(first+30);
+        int i = count(INTERACTIVE,first,first+30), b = count(BULK,first,first+30);
+        assertTrue(i+":"+b, i>=20 && b>=3);
+    }
+
+    public void testShares() throws Exception {
+        RequestGovernor g = governor();
+        load(g,INTERACTIVE,4);
+        load(g,BULK,4);
+        waitFor(60);
+        // 4:1, once the threads are all lined up
+        int i = count(INTERACTIVE,20,60), b = count(BULK,20,60);
+        assertTrue(i+":"+b, i>=28 && b>=5);
+    }
+
+    public void testIdleLaneDoesNotCatchUp() throws Exception {
+        RequestGovernor g = governor();
+        load(g,INTERACTIVE,4);
+        waitFor(30);
+
+        load(g,BULK,4);
+        int first = waitForFirst(BULK);
+        waitFor(first+20);
+        // the bulk lane starts from where the interactive lane is, instead of
+        // claiming the share it didn't use while it was idle
+        int b = count(BULK,first,first+20);
+        assertTrue(String.valueOf(b), b<=7);
+    }
+
+    public void testNestedRequestIsNotHeldBack() throws Exception {
+        final RequestGovernor g = governor();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    // more than the concurrency limit, all from the same thread
+                    List<Long> starts = new ArrayList<Long>();
+                    for( int i=0; i<10; i++ )
+                        starts.add(g.begin(BULK));
+                    done.countDown();
+                    release.await();
+                    for (long s : starts)
+                        g.end(URL,s,false);
+                } catch (InterruptedIOException e) {
+                    // stopped
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        };
+        t.setDaemon(true);
+        threads.add(t);
+        t.start();
+        assertTrue("nested requests are held back",done.await(5,TimeUnit.SECONDS));
+
+        // but other threads are still held back
+        load(g,BULK,1);
+        Thread.sleep(200);
+        assertEquals(0,size());
+
+        release.countDown();
+        waitFor(1);
+    }
+
+    /**
+     * A visitor of streamed issues that makes a request of its own, while the response
+     * it's visiting holds the last connection available.
+     */
+    public void testRequestFromStreamVisitor() throws Exception {
+        FixtureServer server = new FixtureServer();
+        server.addIssues("synthetic",50);
+        server.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            // take all the connections but the one reserved for interactive requests
+            RequestGovernor g = RequestGovernor.of("synthetic.dev.java.net",true);
+            for( int n=1; ; n++ ) {
+                hold(g,release);
+                Thread.sleep(300);
+                if(size()<n)    break;
+            }
+
+            JavaNet jn = server.connect();
+            jn.setPaced(true);
+            final JNIssueTracker tracker = jn.getProject("synthetic").getIssueTracker();
+            Calendar c = new GregorianCalendar(TimeZone.getTimeZone("PST"));
+            c.clear();
+            c.set(2009,Calendar.JANUARY,1);
+            final Date start = c.getTime();
+
+            final List<Object> result = new ArrayList<Object>();
+            Thread t = new Thread() {
+                public void run() {
+                    final int[] count = new int[1];
+                    try {
+                        tracker.visitUpdatedIssues(start,new Date(start.getTime()+30L*24*60*60*1000),new JNIssueTracker.Visitor() {
+                            public void visit(JNIssue issue) throws ProcessingException {
+                                if(count[0]++==0)
+                                    assertEquals(39,tracker.get(39).getId());
+                            }
+                        });
+                        result.add(count[0]);
+                    } catch (Throwable e) {
+                        result.add(e);
+                    }
+                }
+            };
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+            t.join(20000);
+            assertFalse("the visitor is blocked",t.isAlive());
+            assertEquals(Integer.valueOf(50),result.get(0));
+        } finally {
+            release.countDown();
+            server.stop();
+        }
+    }
+
+    /**
+     * Starts a thread that makes a bulk request, and holds on to it until released.
+     */
+    private void hold(final RequestGovernor g, final CountDownLatch release) {
+        Thread t = new Thread() {
+            public void run() {
+                try {
+                    long start = g.begin(BULK);
+                    synchronized(admitted) {
+                        admitted.add(BULK);
+                    }
+                    release.await();
+                    g.end(URL,start,false);
+                } catch (InterruptedIOException e) {
+                    // stopped
+                } catch (InterruptedException e) {
+                    // stopped
+                }
+            }
+        };
+        t.setDaemon(true);
+        threads.add(t);
+        t.start();
+    }
+
+    /**
+     * Starts threads that keep making requests in the given lane.
+     */
+    private void load(final RequestGovernor g, final RequestPriority lane, int n) {
+        for( int i=0; i<n; i++ ) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        while(!stop) {
+                            long start = g.begin(lane);
+                            synchronized(admitted) {
+                                admitted.add(lane);
+                            }
+                            Thread.sleep(2);
+                            g.end(URL,start,false);
+                        }
+                    } catch (InterruptedIOException e) {
+                        // stopped
+                    } catch (InterruptedException e) {
+                        // stopped
+                    }
+                }
+            };
+            t.setDaemon(true);
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    private void waitFor(int n) throws InterruptedException {
+        long limit = System.currentTimeMillis()+20000;
+        while(size()<n) {
+            assertTrue("only "+size()+" requests were admitted",System.currentTimeMillis()<limit);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Waits for the first request in the given lane to be admitted, and returns its index.
+     */
+    private int waitForFirst(RequestPriority lane) throws InterruptedException {
+        long limit = System.currentTimeMillis()+20000;
+        while(true) {
+            synchronized(admitted) {
+                int idx = admitted.indexOf(lane);
+                if(idx>=0)  return idx;
+            }
+            assertTrue(lane+" was never admitted",System.currentTimeMillis()<limit);
+            Thread.sleep(10);
+        }
+    }
+
+    private int size() {
+        synchronized(admitted) {
+            return admitted.size();
+        }
+    }
+
+    private int count(RequestPriority lane, int from) {
+        return count(lane,from,size());
+    }
+
+    private int count(RequestPriority lane, int from, int to) {
+        synchronized(admitted) {
+            int n=0;
+            for (RequestPriority p : admitted.subList(from,Math.min(to,admitted.size())))
+                if(p==lane) n++;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.kohsuke.jnt;
+
+import junit.framework.TestCase;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.XPath;
+import org.kohsuke.jnt.fixture.FixtureServer;
+import org.xml.sax.InputSource;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes sure that the indexed lookup of {@link Selector} finds the same nodes as plain XPath.
+ */
+public class SelectorTest extends TestCase {
+    public void testDocumentList() throws Exception {
+        FixtureServer server = new FixtureServer();
+        server.addDocumentList("synthetic",20);
+        server.start();
+        Document doc;
+        try {
+            InputStream in = new URL("http://synthetic.dev.java.net/servlets/ProjectDocumentList").openConnection(
+                new Proxy(Proxy.Type.HTTP,new InetSocketAddress("127.0.0.1",server.getPort()))).getInputStream();
+            try {
+                doc = Util.getDom4j(new InputSource(in));
+            } finally {
+                in.close();
+            }
+        } finally {
+            server.stop();
+        }
+
+        // one candidate
+        check(doc,"//DIV[@id='projectdocumentlist']",1);
+        check(doc,"//TD[@class='filebrowse']/DIV/TABLE/TBODY/TR",21);
+        check(doc,"//DIV[@id='projectdocumentlist']//A",1+20*3);
+        check(doc,"//DIV[@id='projectdocumentlist']//TR/TD[1]//A",1+20);
+        check(doc,"//LI[@class='selection']/A",1);
+        check(doc,"//DIV[@id='projectdocumentlist']//TR[TD/A]",20);
+        check(doc,"//DIV[@id='projectdocumentlist']//TR[position()=last()]",2);
+        // the value is compared after the entities are resolved
+        check(doc,"//A[@href='/servlets/ProjectDocumentList?folderID=0&expandFolder=0']",1);
+        check(doc,"//A[@href='/servlets/ProjectDocumentList?folderID=0&amp;expandFolder=0']",0);
+
+        // many candidates
+        check(doc,"//A[@href='/servlets/UserView?username=user0']",20);
+        check(doc,"//TD[@class='filebrowse']//TD[@class='x']",0);
+
+        // paths that reach outside the indexed element
+        check(doc,"//TD[@class='treeview']//TR[//A]",0);
+        check(doc,"//TD[@class='treeview']/../TD",2);
+        check(doc,"//TD[@class='treeview']//A | //TITLE",2);
+        check(doc,"//TD[@class='treeview']/following::TD[1]",1);
+
+        // no match
+        check(doc,"//DIV[@id='nosuchthing']",0);
+        check(doc,"//DIV[@id='nosuchthing']//A",0);
+    }
+
+    public void testOverlappingCandidates() throws Exception {
+        Document doc = parse(
+            "<div class='box' id='outer'><a href='1'>1</a>" +
+              "<div class='box'><a href='2'>2</a><p><a href='3'>3</a></p></div>" +
+              "<a href='4'>4</a>" +
+            "</div>" +
+            "<div class='box'><a href='5'>5</a></div>");
+
+        // results from different candidates overlap, and the inner one comes before the rest of the outer one
+        check(doc,"//DIV[@class='box']//A",5);
+        check(doc,"//DIV[@class='box']/A",4);
+        check(doc,"//DIV[@class='box']/P/A",1);
+        check(doc,"//DIV[@id='outer']//A",4);
+    }
+
+    public void testQuotes() throws Exception {
+        Document doc = parse(
+            "<a title='say \"hi\"'>1</a>" +
+            "<a title=\"it's\">2</a>" +
+            "<a title=\"it's\"><b>3</b></a>" +
+            "<a title='say'>4</a>");
+
+        check(doc,"//A[@title='say \"hi\"']",1);
+        check(doc,"//A[@title=\"it's\"]",2);
+        check(doc,"//A[@title=\"it's\"]/B",1);
+        check(doc,"//A[@title='say']",1);
+        check(doc,"//A[@title='say \"hi\"']/text()",1);
+    }
+
+    private static Document parse(String html) throws Exception {
+        return Util.getDom4j(new InputSource(new StringReader("<html><body>"+html+"</body></html>")));
+    }
+
+    /**
+     * Evaluates the expression both ways and compares the results.
+     */
+    private static void check(Document doc, String expression, int size) {
+        // otherwise the comparison is meaningless
+        assertTrue(doc.getClass().getName().endsWith("$IndexedDocument"));
+
+        XPath xpath = DocumentHelper.createXPath(expression);
+        Selector selector = Selector.of(expression);
+
+        List<Node> expected = xpath.selectNodes(doc);
+        List<Node> actual = selector.selectNodes(doc);
+        assertEquals(expression,size,expected.size());
+        assertEquals(expression,expected.size(),actual.size());
+        for( int i=0; i<expected.size(); i++ )
+            assertSame(expression+" #"+i,expected.get(i),actual.get(i));
+        assertInDocumentOrder(expression,doc,actual);
+
+        assertSame(expression,xpath.selectSingleNode(doc),selector.selectSingleNode(doc));
+    }
+
+    private static void assertInDocumentOrder(String expression, Document doc, List<Node> nodes) {
+        List<Node> all = new ArrayList<Node>();
+        list(doc.getRootElement(),all);
+        int last = -1;
+        for (Node n : nodes) {
+            int i = all.indexOf(n);
+            assertTrue(expression+" isn't in the document order",i>last);
+            last = i;
+        }
+    }
+
+    private static void list(Node n, List<Node> all) {
+        all.add(n);
+        if(n instanceof Element) {
+            Element e = (Element)n;
+            for( int i=0,size=e.nodeCount(); i<size; i++ )
+                list(e.node(i),all);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.kohsuke.jnt;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest extends TestCase {
+    private static final int THREADS = 8;
+
+    private ExecutorService pool;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    protected void tearDown() throws Exception {
+        pool.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testConcurrentCallsAreCollapsed() throws Exception {
+        final SingleFlight<Object> sf = new SingleFlight<Object>();
+        final AtomicInteger calls = new AtomicInteger();
+        final Object result = new Object();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<Object>> futures = submitAll(sf,"k",new SingleFlight.Call<Object>() {
+            public Object call() throws IOException {
+                calls.incrementAndGet();
+                await(release);
+                return result;
+            }
+        });
+        waitForCallers();
+        release.countDown();
+
+        for (Future<Object> f : futures)
+            assertSame(result,f.get(10,TimeUnit.SECONDS));
+        assertEquals(1,calls.get());
+    }
+
+    public void testExceptionReachesEveryWaiter() throws Exception {
+        final SingleFlight<Object> sf = new SingleFlight<Object>();
+        final AtomicInteger calls = new AtomicInteger();
+        final IOException error = new IOException("boom");
+        final CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<Object>> futures = submitAll(sf,"k",new SingleFlight.Call<Object>() {
+            public Object call() throws IOException {
+                calls.incrementAndGet();
+                await(release);
+                throw error;
+            }
+        });
+        waitForCallers();
+        release.countDown();
+
+        for (Future<Object> f : futures) {
+            try {
+                f.get(10,TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(error,e.getCause());
+            }
+        }
+        assertEquals(1,calls.get());
+    }
+
+    public void testFinishedFlightIsNotCached() throws Exception {
+        SingleFlight<Integer> sf = new SingleFlight<Integer>();
+        final AtomicInteger calls = new AtomicInteger();
+        SingleFlight.Call<Integer> c = new SingleFlight.Call<Integer>() {
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        };
+        assertEquals(Integer.valueOf(1),sf.execute("k",c));
+        assertEquals(Integer.valueOf(2),sf.execute("k",c));
+    }
+
+    public void testDifferentKeysRunSeparately() throws Exception {
+        final SingleFlight<String> sf = new SingleFlight<String>();
+        final CountDownLatch both = new CountDownLatch(2);
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (final String key : new String[]{"a","b"}) {
+            futures.add(pool.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    return sf.execute(key,new SingleFlight.Call<String>() {
+                        public String call() throws IOException {
+                            // deadlocks unless both keys are executing at the same time
+                            both.countDown();
+                            await(both);
+                            return key;
+                        }
+                    });
+                }
+            }));
+        }
+        assertEquals("a",futures.get(0).get(10,TimeUnit.SECONDS));
+        assertEquals("b",futures.get(1).get(10,TimeUnit.SECONDS));
+    }
+
+    private <V> List<Future<V>> submitAll(final SingleFlight<V> sf, final String key, final SingleFlight.Call<V> call) {
+        List<Future<V>> futures = new ArrayList<Future<V>>();
+        for( int i=0; i<THREADS; i++ )
+            futures.add(pool.submit(new Callable<V>() {
+                public V call() throws Exception {
+                    return sf.execute(key,call);
+                }
+            }));
+        return futures;
+    }
+
+    /**
+     * Waits until all the threads are either executing the call or waiting for it.
+     */
+    private void waitForCallers() throws InterruptedException {
+        long limit = System.currentTimeMillis()+10000;
+        while(countWaiting()<THREADS-1) {
+            assertTrue("callers didn't line up",System.currentTimeMillis()<limit);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Counts the pool threads parked in {@link SingleFlight}, waiting for another thread's execution.
+     */
+    private int countWaiting() {
+        int n=0;
+        for (StackTraceElement[] st : Thread.getAllStackTraces().values())
+            for (StackTraceElement e : st)
+                if(e.getClassName().equals(SingleFlight.class.getName()+"$Flight") && e.getMethodName().equals("await")) {
+                    n++;
+                    break;
+                }
+        return n;
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            if(!latch.await(10,TimeUnit.SECONDS))
+                throw new IOException("timed out");
+        } catch (InterruptedException e) {
+            throw new IOException(e.toString());
+        }
+    }
+}
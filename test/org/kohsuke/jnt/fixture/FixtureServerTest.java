@@ -0,0 +1,305 @@
+package org.kohsuke.jnt.fixture;
+
+import junit.framework.TestCase;
+import org.kohsuke.jnt.IssueMirror;
+import org.kohsuke.jnt.JNIssue;
+import org.kohsuke.jnt.JNIssueTracker;
+import org.kohsuke.jnt.JNProject;
+import org.kohsuke.jnt.JavaNet;
+import org.kohsuke.jnt.JavaNetPool;
+import org.kohsuke.jnt.PageCache;
+import org.kohsuke.jnt.ProcessingException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Runs the scraping code against {@link FixtureServer}, without talking to java.net.
+ */
+public class FixtureServerTest extends TestCase {
+    private FixtureServer server;
+    private File dir;
+
+    public void setUp() throws IOException {
+        server = new FixtureServer();
+        server.addMemberList("synthetic",500);
+        server.addDocumentList("synthetic",200);
+        server.addIssues("synthetic",150);
+        server.addIssues("heavy",150,30);
+        server.start();
+
+        dir = File.createTempFile("fixture","");
+        dir.delete();
+    }
+
+    public void tearDown() throws IOException {
+        server.stop();
+        delete(dir);
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if(files!=null)
+            for (File c : files)
+                delete(c);
+        f.delete();
+    }
+
+    public void testSyntheticPages() throws Exception {
+        JavaNet jn = server.connect();
+        JNProject p = jn.getProject("synthetic");
+        assertEquals(500,p.getMembership().getMembers().size());
+        assertEquals(2,p.getMembership().getRolesOf(jn.getUser("user10")).size());
+        assertEquals(200,p.getRootFolder().getFiles().size());
+        assertEquals(150,p.getIssueTracker().getRange(1,1000).size());
+        assertEquals("Synthetic issue #42",p.getIssueTracker().get(42).getShortDescription());
+    }
+
+    public void testRecordAndReplay() throws Exception {
+        JavaNet jn = server.connect();
+        jn.setRecorder(new FixtureStore(dir));
+        assertEquals(500,jn.getProject("synthetic").getMembership().getMembers().size());
+        server.stop();
+
+        FixtureServer replay = new FixtureServer(new FixtureStore(dir));
+        replay.start();
+        try {
+            JNProject p = replay.connect().getProject("synthetic");
+            assertEquals(500,p.getMembership().getMembers().size());
+        } finally {
+            replay.stop();
+        }
+    }
+
+    public void testIssueMirror() throws Exception {
+        JNProject p = server.connect().getProject("synthetic");
+        IssueMirror mirror = new IssueMirror(dir);
+        assertNull(mirror.getHighWaterMark(p));
+        assertEquals(150,mirror.sync(p).size());
+        server.stop();
+
+        // queries run against the local copy
+        assertEquals(150,mirror.getAll(p).size());
+        assertEquals("Synthetic issue #42",mirror.get(p,42).getShortDescription());
+        assertNull(mirror.get(p,151));
+        assertEquals(2009,mirror.getHighWaterMark(p).get(Calendar.YEAR));
+    }
+
+    public void testIssueMirrorIncremental() throws Exception {
+        JNProject p = server.connect().getProject("synthetic");
+        IssueMirror mirror = new IssueMirror(dir);
+        mirror.sync(p);
+        File pdir = new File(dir,"synthetic");
+        Map<String,String> before = read(pdir);
+
+        // only the changed issue is fetched and rewritten
+        server.updateIssue("synthetic",42);
+        Map<Integer,JNIssue> updated = mirror.sync(p);
+        assertEquals(Collections.singleton(42),updated.keySet());
+        assertEquals("Synthetic issue #42 (updated)",mirror.get(p,42).getShortDescription());
+        Map<String,String> after = read(pdir);
+        assertEquals(before.keySet(),after.keySet());   // no temporary files are left behind
+        for (String name : before.keySet())
+            if(!name.equals("mirror.properties"))
+                assertEquals(name,name.equals("42.xml"),!before.get(name).equals(after.get(name)));
+        assertEquals(Calendar.getInstance().get(Calendar.YEAR),mirror.getHighWaterMark(p).get(Calendar.YEAR));
+
+        // nothing changed, so one request covers everything
+        int requests = server.getRequestCount();
+        assertTrue(mirror.sync(p).isEmpty());
+        assertEquals(requests+1,server.getRequestCount());
+
+        // a failed sync leaves the local copy as it was, and the next one picks up the change
+        server.updateIssue("synthetic",43);
+        Map<String,String> beforeFailure = read(pdir);
+        server.stop();
+        try {
+            mirror.sync(p);
+            fail();
+        } catch (ProcessingException e) {
+            // expected
+        }
+        assertEquals(beforeFailure,read(pdir));
+        server.start();
+        p = server.connect().getProject("synthetic");
+        assertEquals(Collections.singleton(43),mirror.sync(p).keySet());
+    }
+
+    public void testIssueMirrorWindows() throws Exception {
+        JNProject p = server.connect().getProject("synthetic");
+        IssueMirror mirror = new IssueMirror(dir);
+        mirror.sync(p);
+
+        // a sync after a long time asks for a month at a time
+        setSince(p,System.currentTimeMillis()-65L*24*60*60*1000);
+        server.updateIssue("synthetic",7);
+        int requests = server.getRequestCount();
+        assertEquals(Collections.singleton(7),mirror.sync(p).keySet());
+        assertEquals(requests+3,server.getRequestCount());
+
+        // updates a bit older than the last sync are still picked up, in case the clocks disagree
+        server.updateIssue("synthetic",8);
+        setSince(p,System.currentTimeMillis()+30*60*1000);
+        assertTrue(mirror.sync(p).containsKey(8));
+    }
+
+    private void setSince(JNProject p, long since) throws IOException {
+        File f = new File(new File(dir,p.getName()),"mirror.properties");
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(f);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        props.setProperty("since",String.valueOf(since));
+        OutputStream out = new FileOutputStream(f);
+        try {
+            props.store(out,null);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads all the files in the directory.
+     */
+    private static Map<String,String> read(File dir) throws IOException {
+        Map<String,String> r = new TreeMap<String,String>();
+        for (File f : dir.listFiles()) {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            InputStream in = new FileInputStream(f);
+            try {
+                byte[] b = new byte[8192];
+                int n;
+                while((n=in.read(b))>=0)
+                    buf.write(b,0,n);
+            } finally {
+                in.close();
+            }
+            r.put(f.getName(),buf.toString("UTF-8"));
+        }
+        return r;
+    }
+
+    public void testBatchSplitOnFailure() throws Exception {
+        JNProject p = server.connect().getProject("heavy");
+        // the batches that are too large fail, and they are retried in halves
+        assertEquals(150,p.getIssueTracker().getRange(1,1000).size());
+        assertEquals(150,p.getIssueTracker().getAll().size());
+    }
+
+    /**
+     * The scan goes on past a gap of less than 1000 IDs.
+     * The windows are 100 IDs, and galloping stops at the empty window of IDs 200-299.
+     */
+    public void testScanAcrossGap() throws Exception {
+        server.addIssues("gap",1400);
+        server.moveIssues("gap",151,1149);
+        Map<Integer,JNIssue> all = server.connect().getProject("gap").getIssueTracker().getAll();
+        assertEquals(150+251,all.size());
+        assertTrue(all.containsKey(1150));
+        assertTrue(all.containsKey(1400));
+    }
+
+    /**
+     * A gap of more than 1000 IDs is taken as the end of the issues.
+     */
+    public void testScanStopsAtLargeGap() throws Exception {
+        server.addIssues("gap",1400);
+        server.moveIssues("gap",151,1300);
+        Map<Integer,JNIssue> all = server.connect().getProject("gap").getIssueTracker().getAll();
+        assertEquals(150,all.size());
+        assertFalse(all.containsKey(1301));
+    }
+
+    public void testVisitUpdatedIssues() throws Exception {
+        JNProject p = server.connect().getProject("synthetic");
+        Calendar c = new GregorianCalendar(TimeZone.getTimeZone("PST"));
+        c.clear();
+        c.set(2009,Calendar.JANUARY,1);
+        Date start = c.getTime();
+
+        final int[] count = new int[1];
+        p.getIssueTracker().visitUpdatedIssues(start,new JNIssueTracker.Visitor() {
+            public void visit(JNIssue issue) {
+                count[0]++;
+            }
+        });
+        assertEquals(150,count[0]);
+        assertEquals(150,p.getIssueTracker().getUpdatedIssues(start).size());
+    }
+
+    public void testPool() throws Exception {
+        // the clones must talk to the fixture server too
+        JavaNetPool pool = new JavaNetPool(server.connect(),3);
+        for( int i=0; i<pool.size(); i++ ) {
+            int n = pool.run(new JavaNetPool.Task<Integer>() {
+                public Integer run(JavaNet session) throws ProcessingException {
+                    return session.getProject("synthetic").getMembership().getMembers().size();
+                }
+            });
+            assertEquals(500,n);
+        }
+    }
+
+    public void testPoolRejectsDoubleRelease() throws Exception {
+        JavaNetPool pool = new JavaNetPool(server.connect(),2);
+        JavaNet session = pool.acquire();
+        pool.release(session);
+        try {
+            pool.release(session);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            pool.release(server.connect());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // the pool still lends each session only once
+        JavaNet a = pool.acquire();
+        JavaNet b = pool.acquire();
+        assertNotSame(a,b);
+        pool.release(a);
+        pool.release(b);
+    }
+
+    public void testPageCache() throws Exception {
+        PageCache cache = new PageCache(dir,1024*1024);
+
+        JavaNet jn = server.connect();
+        jn.setPageCache(cache);
+        assertEquals(500,jn.getProject("synthetic").getMembership().getMembers().size());
+        assertEquals(0,server.getNotModifiedCount());
+
+        // another session sends a conditional GET, and reads the body from the cache
+        jn = server.connect();
+        jn.setPageCache(cache);
+        assertEquals(500,jn.getProject("synthetic").getMembership().getMembers().size());
+        assertEquals(1,server.getNotModifiedCount());
+
+        // a changed page is fetched again
+        server.addMemberList("synthetic",10);
+        jn = server.connect();
+        jn.setPageCache(cache);
+        assertEquals(10,jn.getProject("synthetic").getMembership().getMembers().size());
+        assertEquals(1,server.getNotModifiedCount());
+    }
+}